@@ -0,0 +1,92 @@
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * AngleRotation rotates a picture by any angle, in the same direction as
+ * RightAngleRotation.
+ *
+ * It works backwards: each output pixel is mapped back to the spot in the
+ * source it came from with Matrix2by2.rotation(radians), and the source is
+ * sampled there, so every output pixel gets exactly one value and there are
+ * no holes. rotation(radians).inverse() is the forward turn, used to work
+ * out how big the rotated picture is.
+ *
+ * The turn about the centers is one Matrix3by3 and the resampling is done by
+ * Warp, which steps the source spot along each output row by adding two
+ * numbers per pixel instead of multiplying by the matrix.
+ */
+public class AngleRotation {
+    private static final int WHITE = 0xffffffff;
+
+    /**
+     * Rotate a picture about its center
+     * @param source the picture to rotate
+     * @param radians the angle, counter-clockwise like rotate(img, 90)
+     * @param sampling how to read between source pixels
+     * @param expandCanvas true to make the output big enough for the whole
+     *        rotated picture, false to keep the source size and crop the corners
+     * @return a new picture, white where nothing rotated in
+     */
+    public static Picture rotate(Picture source, double radians, Sampling sampling, boolean expandCanvas) {
+        Matrix2by2 forward = Matrix2by2.rotation(radians).inverse();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int outWidth = width;
+        int outHeight = height;
+        if (expandCanvas) {
+            // a vector times the matrix is (a x + c y, b x + d y)
+            Rectangle2D bounds = source.getTransformEnclosingRect(
+                new AffineTransform(forward.getA(), forward.getB(), forward.getC(), forward.getD(), 0, 0));
+            outWidth = Warp.pixels(bounds.getWidth());
+            outHeight = Warp.pixels(bounds.getHeight());
+        }
+
+        // move the source center to the origin, turn, then move to the output center
+        Matrix3by3 transform = Matrix3by3.translation(-(width - 1) / 2.0, -(height - 1) / 2.0)
+                                         .then(forward)
+                                         .then(Matrix3by3.translation((outWidth - 1) / 2.0, (outHeight - 1) / 2.0));
+        return Warp.warp(source, transform, sampling, outWidth, outHeight, WHITE);
+    }
+
+    /**
+     * Unit tests for AngleRotation
+     */
+    public static void runUnitTests() {
+        System.out.println("=== AngleRotation Unit Tests ===");
+
+        Picture source = new Picture(7, 10);
+        source.forEachPixel((x, y, p) -> 0xff000000 | (x * 25 << 16) | (y * 36 << 8) | ((x + y) * 13));
+
+        // Test 1: a quarter turn lands on whole pixels and matches the exact rotation
+        Picture exact = RightAngleRotation.of(90).rotate(source);
+        for (Sampling sampling : Sampling.values()) {
+            Picture rotated = rotate(source, Math.PI / 2, sampling, true);
+            assert Picture.isSame(rotated, exact) : sampling + " quarter turn should match RightAngleRotation";
+        }
+        System.out.println("Test 1 - pi/2 with nearest, bilinear and bicubic matches the 90 degree rotation");
+        System.out.println("✓ Inverse mapping works correctly");
+
+        // Test 2: the expanded canvas fits the rotated corners
+        Picture big = new Picture(60, 100);
+        Picture diagonal = rotate(big, Math.PI / 4, Sampling.NEAREST, true);
+        int expected = (int) Math.ceil(158 / Math.sqrt(2) + 1 - 1e-6);
+        System.out.println("Test 2 - 100x60 at 45 degrees: " + diagonal.getWidth() + "x" + diagonal.getHeight());
+        assert diagonal.getWidth() == expected && diagonal.getHeight() == expected : "Expanded canvas is wrong";
+        Picture cropped = rotate(big, Math.PI / 4, Sampling.NEAREST, false);
+        assert cropped.getWidth() == 100 && cropped.getHeight() == 60 : "Canvas should not change";
+        System.out.println("✓ Canvas size works correctly");
+
+        // Test 3: smooth sampling of one flat color stays that color away from the edges
+        Picture flat = new Picture(40, 40);
+        flat.setAllPixelsToAColor(new java.awt.Color(10, 120, 230));
+        for (Sampling sampling : Sampling.values()) {
+            Picture rotated = rotate(flat, 0.3, sampling, false);
+            assert rotated.getBasicPixel(20, 20) == flat.getBasicPixel(20, 20) : sampling + " changed a flat color";
+            assert rotated.getBasicPixel(0, 0) == WHITE : sampling + " corner should be white";
+        }
+        System.out.println("Test 3 - Flat color rotated by 0.3 radians keeps its color, corners are white");
+        System.out.println("✓ Sampling works correctly");
+
+        System.out.println("=== All AngleRotation tests passed! ===\n");
+    }
+}
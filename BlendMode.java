@@ -0,0 +1,70 @@
+/**
+ * BlendMode is how a layer's color is mixed with the color underneath it,
+ * worked out for red, green and blue on their own with values 0 to 255.
+ *
+ * - NORMAL takes the layer's color.
+ * - MULTIPLY multiplies the two, which always darkens (white changes nothing).
+ * - SCREEN multiplies the negatives, which always lightens (black changes nothing).
+ * - OVERLAY multiplies where the color underneath is dark and screens where
+ *   it is light, which adds contrast.
+ * - ADD adds the two, up to 255.
+ *
+ * How much of the mixed color is used is up to the layer's opacity and mask
+ * (see LayerStack); the result keeps the alpha of the color underneath.
+ */
+public enum BlendMode {
+    NORMAL {
+        int channel(int under, int over) {
+            return over;
+        }
+    },
+
+    MULTIPLY {
+        int channel(int under, int over) {
+            return (under * over + 127) / 255;
+        }
+    },
+
+    SCREEN {
+        int channel(int under, int over) {
+            return 255 - ((255 - under) * (255 - over) + 127) / 255;
+        }
+    },
+
+    OVERLAY {
+        int channel(int under, int over) {
+            if (under < 128) {
+                return (2 * under * over + 127) / 255;
+            }
+            return 255 - (2 * (255 - under) * (255 - over) + 127) / 255;
+        }
+    },
+
+    ADD {
+        int channel(int under, int over) {
+            return Math.min(under + over, 255);
+        }
+    };
+
+    /**
+     * Mix one channel
+     * @param under the value underneath, 0 to 255
+     * @param over the layer's value, 0 to 255
+     * @return the mixed value, 0 to 255
+     */
+    abstract int channel(int under, int over);
+
+    /**
+     * Mix two colors, each channel on its own
+     * @param under the packed color underneath
+     * @param over the layer's packed color
+     * @return the mixed color, with the alpha of the color underneath
+     */
+    public int blend(int under, int over) {
+        int result = under & 0xff000000;
+        for (int shift = 0; shift < 24; shift += 8) {
+            result |= channel((under >> shift) & 0xff, (over >> shift) & 0xff) << shift;
+        }
+        return result;
+    }
+}
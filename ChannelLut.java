@@ -0,0 +1,233 @@
+import java.util.function.IntUnaryOperator;
+
+/**
+ * ChannelLut is a color effect stored as lookup tables instead of arithmetic.
+ *
+ * There are two forms:
+ * - per channel: each of red, green and blue goes through its own 256 entry
+ *   table (negative, clear low bits, reveal, ...)
+ * - mixed: red, green and blue first go through their tables, the three
+ *   results are added, and each output channel is looked up from a table
+ *   indexed by that sum (0..765). Grayscale is a mixed table.
+ *
+ * Chaining two ChannelLuts with andThen gives another ChannelLut, so any
+ * chain of these effects still costs one lookup per channel (plus one per
+ * channel for the sum when a mixed table is in the chain). Alpha is kept.
+ */
+public class ChannelLut implements ColorOp {
+    private static final int LEVELS = 256;
+    private static final int SUM_LEVELS = 3 * 255 + 1;
+    private static final byte[] IDENTITY_TABLE = table(LEVELS, v -> v);
+
+    // tables applied to the red, green and blue of the input pixel
+    private final byte[] red, green, blue;
+    // tables indexed by the sum of the three results above, or null for per channel
+    private final byte[] sumRed, sumGreen, sumBlue;
+    // same effect as the tables for a whole range of pixels, or null to use the tables
+    private final Kernel kernel;
+
+    /**
+     * A loop that does the same thing as the tables on a range of pixels
+     */
+    interface Kernel {
+        void run(int[] pixels, int from, int to);
+    }
+
+    private ChannelLut(byte[] red, byte[] green, byte[] blue,
+                       byte[] sumRed, byte[] sumGreen, byte[] sumBlue, Kernel kernel) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.sumRed = sumRed;
+        this.sumGreen = sumGreen;
+        this.sumBlue = sumBlue;
+        this.kernel = kernel;
+    }
+
+    private ChannelLut(byte[] red, byte[] green, byte[] blue,
+                       byte[] sumRed, byte[] sumGreen, byte[] sumBlue) {
+        this(red, green, blue, sumRed, sumGreen, sumBlue, null);
+    }
+
+    /**
+     * Use a bulk kernel for applyAll. The kernel must give exactly the same
+     * pixels as the tables; merged tables go back to the table loop.
+     * @param kernel the loop to run on ranges of pixels
+     * @return the same tables with the kernel
+     */
+    ChannelLut withKernel(Kernel kernel) {
+        return new ChannelLut(red, green, blue, sumRed, sumGreen, sumBlue, kernel);
+    }
+
+    /**
+     * Build a table that runs the same function on red, green and blue
+     * @param function maps a value 0..255 to a value 0..255
+     * @return the table
+     */
+    public static ChannelLut perChannel(IntUnaryOperator function) {
+        byte[] table = table(LEVELS, function);
+        return new ChannelLut(table, table, table, null, null, null);
+    }
+
+    /**
+     * Build a table with a different function for each channel
+     * @param red maps a red value 0..255 to a new red value
+     * @param green maps a green value 0..255 to a new green value
+     * @param blue maps a blue value 0..255 to a new blue value
+     * @return the table
+     */
+    public static ChannelLut perChannel(IntUnaryOperator red, IntUnaryOperator green, IntUnaryOperator blue) {
+        return new ChannelLut(table(LEVELS, red), table(LEVELS, green), table(LEVELS, blue), null, null, null);
+    }
+
+    /**
+     * Build a table that sets red, green and blue from red + green + blue
+     * @param function maps a sum 0..765 to a value 0..255
+     * @return the table
+     */
+    public static ChannelLut fromSum(IntUnaryOperator function) {
+        byte[] table = table(SUM_LEVELS, function);
+        return new ChannelLut(IDENTITY_TABLE, IDENTITY_TABLE, IDENTITY_TABLE, table, table, table);
+    }
+
+    /**
+     * @return true if each output channel only depends on the same input channel
+     */
+    public boolean isPerChannel() {
+        return sumRed == null;
+    }
+
+    @Override
+    public int apply(int pixel) {
+        int r = red[(pixel >> 16) & 0xff] & 0xff;
+        int g = green[(pixel >> 8) & 0xff] & 0xff;
+        int b = blue[pixel & 0xff] & 0xff;
+        if (sumRed != null) {
+            int sum = r + g + b;
+            r = sumRed[sum] & 0xff;
+            g = sumGreen[sum] & 0xff;
+            b = sumBlue[sum] & 0xff;
+        }
+        return (pixel & 0xff000000) | (r << 16) | (g << 8) | b;
+    }
+
+    @Override
+    public void applyAll(int[] pixels, int from, int to) {
+        if (kernel != null) {
+            kernel.run(pixels, from, to);
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            pixels[i] = apply(pixels[i]);
+        }
+    }
+
+    /**
+     * Chain another effect after this one. Another ChannelLut is merged into
+     * a single table; anything else is run after this table.
+     * @param next the effect to run on the result of this one
+     * @return the combined effect
+     */
+    @Override
+    public ColorOp andThen(ColorOp next) {
+        if (next instanceof ChannelLut) {
+            return compose((ChannelLut) next);
+        }
+        return ColorOp.super.andThen(next);
+    }
+
+    /**
+     * Merge this table with one that runs after it
+     * @param next the table to run on the result of this one
+     * @return one table that does both
+     */
+    public ChannelLut compose(ChannelLut next) {
+        if (isPerChannel()) {
+            // next's input tables read what this one outputs
+            byte[] r = chain(red, next.red);
+            byte[] g = chain(green, next.green);
+            byte[] b = chain(blue, next.blue);
+            return new ChannelLut(r, g, b, next.sumRed, next.sumGreen, next.sumBlue);
+        }
+        if (next.isPerChannel()) {
+            // keep this sum, run next on each channel of its output
+            return new ChannelLut(red, green, blue,
+                                  chain(sumRed, next.red), chain(sumGreen, next.green), chain(sumBlue, next.blue));
+        }
+        // both mixed: the sum next sees is a function of the sum this one sees
+        byte[] r = new byte[SUM_LEVELS];
+        byte[] g = new byte[SUM_LEVELS];
+        byte[] b = new byte[SUM_LEVELS];
+        for (int sum = 0; sum < SUM_LEVELS; sum++) {
+            int nextSum = (next.red[sumRed[sum] & 0xff] & 0xff)
+                        + (next.green[sumGreen[sum] & 0xff] & 0xff)
+                        + (next.blue[sumBlue[sum] & 0xff] & 0xff);
+            r[sum] = next.sumRed[nextSum];
+            g[sum] = next.sumGreen[nextSum];
+            b[sum] = next.sumBlue[nextSum];
+        }
+        return new ChannelLut(red, green, blue, r, g, b);
+    }
+
+    // table[i] = second[first[i]]
+    private static byte[] chain(byte[] first, byte[] second) {
+        if (first == IDENTITY_TABLE) return second;
+        if (second == IDENTITY_TABLE) return first;
+        byte[] result = new byte[first.length];
+        for (int i = 0; i < first.length; i++) {
+            result[i] = second[first[i] & 0xff];
+        }
+        return result;
+    }
+
+    private static byte[] table(int size, IntUnaryOperator function) {
+        byte[] table = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int value = function.applyAsInt(i);
+            if (value < 0 || value > 255) {
+                throw new IllegalArgumentException("table value " + value + " for " + i + " is not 0..255");
+            }
+            table[i] = (byte) value;
+        }
+        return table;
+    }
+
+    /**
+     * Unit tests for ChannelLut
+     */
+    public static void runUnitTests() {
+        System.out.println("=== ChannelLut Unit Tests ===");
+        int[] samples = {0xff000000, 0xffffffff, 0xff123456, 0x80fedcba, 0xff7f8081, 0xff030201};
+
+        // Test 1: negative and grayscale tables match the arithmetic
+        ColorOp negative = ColorOp.negative();
+        ColorOp grayscale = ColorOp.grayscale();
+        for (int p : samples) {
+            int avg = (Pixel.getRed(p) + Pixel.getGreen(p) + Pixel.getBlue(p)) / 3;
+            assert negative.apply(p) == (p ^ 0x00ffffff) : "Negative table failed";
+            assert grayscale.apply(p) == ((p & 0xff000000) | (avg << 16) | (avg << 8) | avg) : "Grayscale table failed";
+        }
+        System.out.println("Test 1 - Negative of " + Integer.toHexString(samples[2]) + " = "
+                           + Integer.toHexString(negative.apply(samples[2])));
+        System.out.println("✓ Single tables work correctly");
+
+        // Test 2: chained tables are merged and give the same result as running each one
+        ColorOp chain = ColorOp.grayscale().andThen(ColorOp.negative()).andThen(ColorOp.grayscale())
+                               .andThen(ColorOp.clearLow());
+        System.out.println("Test 2 - Chain merged into one table: " + (chain instanceof ChannelLut));
+        assert chain instanceof ChannelLut : "Chain of tables should be one table";
+        for (int p : samples) {
+            int expected = ColorOp.clearLow().apply(grayscale.apply(negative.apply(grayscale.apply(p))));
+            assert chain.apply(p) == expected : "Merged table failed";
+        }
+        System.out.println("✓ Merging tables works correctly");
+
+        // Test 3: a table followed by something else still works
+        ColorOp mixed = ColorOp.negative().andThen(ColorOp.recolorBRG());
+        assert mixed.apply(0xff102030) == 0xffcfefdf : "Table then recolor failed";
+        System.out.println("Test 3 - Negative then recolor: " + Integer.toHexString(mixed.apply(0xff102030)));
+        System.out.println("✓ Mixing tables and other effects works correctly");
+
+        System.out.println("=== All ChannelLut tests passed! ===\n");
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * ColorOp is a color effect that changes each pixel on its own without
+ * looking at any other pixel (recolor, negative, grayscale, ...).
+ * Pixels are packed ints with alpha, red, green and blue taking 8 bits each
+ * from left to right. The effects here keep the alpha as it is.
+ * Effects can be chained with andThen so a whole list of them runs as one
+ * function per pixel. Effects that work on each channel by itself are
+ * ChannelLut tables, and chains of those merge into a single table.
+ */
+public interface ColorOp {
+
+    /** The effect that returns every pixel unchanged */
+    ColorOp IDENTITY = pixel -> pixel;
+
+    /**
+     * Apply the effect to one pixel
+     * @param pixel the (alpha, red, green, blue) value
+     * @return the new (alpha, red, green, blue) value
+     */
+    int apply(int pixel);
+
+    /**
+     * Apply the effect to a range of pixels in place. Effects that have a
+     * PixelKernels version override this to do many pixels at a time.
+     * @param pixels the packed pixels
+     * @param from the first index
+     * @param to one past the last index
+     */
+    default void applyAll(int[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            pixels[i] = apply(pixels[i]);
+        }
+    }
+
+    /**
+     * Chain another effect after this one
+     * @param next the effect to run on the result of this one
+     * @return an effect that runs this one and then next
+     */
+    default ColorOp andThen(ColorOp next) {
+        if (this == IDENTITY) return next;
+        if (next == IDENTITY) return this;
+        ColorOp first = this;
+        return new ColorOp() {
+            public int apply(int pixel) {
+                return next.apply(first.apply(pixel));
+            }
+
+            public void applyAll(int[] pixels, int from, int to) {
+                first.applyAll(pixels, from, to);
+                next.applyAll(pixels, from, to);
+            }
+        };
+    }
+
+    /**
+     * @return the effect that leaves pixels unchanged
+     */
+    static ColorOp identity() {
+        return IDENTITY;
+    }
+
+    /**
+     * Swap RGB to BRG - blue becomes red, red becomes green, green becomes blue
+     * @return the recolor effect
+     */
+    static ColorOp recolorBRG() {
+        return new ColorOp() {
+            public int apply(int pixel) {
+                return (pixel & 0xff000000) | ((pixel & 0xff) << 16) | ((pixel >> 8) & 0xffff);
+            }
+
+            public void applyAll(int[] pixels, int from, int to) {
+                PixelKernels.get().recolorBRG(pixels, from, to);
+            }
+        };
+    }
+
+    /**
+     * Subtract each color value from 255
+     * @return the negative effect
+     */
+    static ColorOp negative() {
+        return ChannelLut.perChannel(value -> 255 - value)
+                         .withKernel((pixels, from, to) -> PixelKernels.get().negative(pixels, from, to));
+    }
+
+    /**
+     * Set red, green and blue to their average
+     * @return the grayscale effect
+     */
+    static ColorOp grayscale() {
+        return ChannelLut.fromSum(sum -> sum / 3)
+                         .withKernel((pixels, from, to) -> PixelKernels.get().grayscale(pixels, from, to));
+    }
+
+    /**
+     * Set the blue to 0
+     * @return the zero blue effect
+     */
+    static ColorOp zeroBlue() {
+        return ChannelLut.perChannel(red -> red, green -> green, blue -> 0)
+                         .withKernel((pixels, from, to) -> PixelKernels.get().and(pixels, from, to, 0xffffff00));
+    }
+
+    /**
+     * Clear the lowest two bits of red, green and blue
+     * @return the clear low effect
+     */
+    static ColorOp clearLow() {
+        return ChannelLut.perChannel(value -> value & 0xfc)
+                         .withKernel((pixels, from, to) ->
+                                     PixelKernels.get().and(pixels, from, to, PixelKernels.CLEAR_LOW_MASK));
+    }
+}
@@ -22,9 +22,17 @@ public interface DigitalPicture
   public BufferedImage getBufferedImage(); // get the buffered image
   public int getBasicPixel(int x, int y); // get the pixel information as an int   
   public void setBasicPixel(int x, int y, int rgb); // set the pixel information
+  public int[] getRow(int y, int[] row); // get a row of pixels as ints
+  public void setRow(int y, int[] row); // set a row of pixels from ints
+  public int[] getRegion(int x, int y, int width, int height, 
+                         int[] pixels, int offset, int stride); // get a rectangle of pixels as ints
+  public void setRegion(int x, int y, int width, int height, 
+                        int[] pixels, int offset, int stride); // set a rectangle of pixels from ints
   public Pixel getPixel(int x, int y); // get the pixel information as an object
   public Pixel[] getPixels(); // get all pixels in row-major order
   public Pixel[][] getPixels2D(); // get 2-D array of pixels in row-major order
+  public PixelCursor getPixelCursor(); // get a reusable cursor to move over the pixels
+  public void forEachPixel(PixelVisitor visitor); // visit and update every pixel in row-major order
   public void load(Image image); // load the image into the picture
   public boolean load(String fileName); // load the picture from a file
   public void show(); // show the picture 
@@ -7,109 +7,65 @@ public class ImageApp
 {
   // Recolor method - swaps RGB to BRG
   public static Picture recolor(Picture img) {
-    Picture result = new Picture(img);
-    Pixel[][] pixels = result.getPixels2D();
-    
-    // go through each pixel
-    for (int row = 0; row < pixels.length; row++) {
-      for (int col = 0; col < pixels[0].length; col++) {
-        Color c = pixels[row][col].getColor();
-        // swap the order - blue becomes red, red becomes green, green becomes blue
-        pixels[row][col].setColor(new Color(c.getBlue(), c.getRed(), c.getGreen()));
-      }
-    }
-    return result;
+    return applyColorEffect(img, ColorOp.recolorBRG());
   }
   
   // Negative method - inverts colors
   public static Picture negative(Picture img) {
-    Picture result = new Picture(img);
-    Pixel[][] pixels = result.getPixels2D();
-    
-    for (int row = 0; row < pixels.length; row++) {
-      for (int col = 0; col < pixels[0].length; col++) {
-        Color c = pixels[row][col].getColor();
-        // subtract each value from 255 to invert
-        pixels[row][col].setColor(new Color(255 - c.getRed(), 255 - c.getGreen(), 255 - c.getBlue()));
-      }
-    }
-    return result;
+    return applyColorEffect(img, ColorOp.negative());
   }
   
   // Grayscale method
   public static Picture grayscale(Picture img) {
+    return applyColorEffect(img, ColorOp.grayscale());
+  }
+  
+  // Runs a color effect on each pixel of a copy of the picture
+  public static Picture applyColorEffect(Picture img, ColorOp effect) {
     Picture result = new Picture(img);
-    Pixel[][] pixels = result.getPixels2D();
-    
-    for (int row = 0; row < pixels.length; row++) {
-      for (int col = 0; col < pixels[0].length; col++) {
-        Color c = pixels[row][col].getColor();
-        // average the three color values
-        int avg = (c.getRed() + c.getGreen() + c.getBlue()) / 3;
-        // set all three to the same value for gray
-        pixels[row][col].setColor(new Color(avg, avg, avg));
+    int width = result.getWidth();
+    int[] data = result.getPixelData();
+    int alphaMask = result.getAlphaMask();
+    
+    // each band of rows can be done on its own thread
+    RowBandExecutor.forEachBand(width, result.getHeight(), (fromRow, toRow) -> {
+      int from = fromRow * width;
+      int to = toRow * width;
+      if (alphaMask != 0) {
+        for (int i = from; i < to; i++) {
+          data[i] |= alphaMask;
+        }
       }
-    }
+      effect.applyAll(data, from, to);
+    });
     return result;
   }
   
-  // Rotate method using matrix multiplication
+  // Rotate method - degrees counterclockwise, 90 and 270 give a picture
+  // with the width and height swapped, other angles are bilinear and the
+  // picture grows to fit the rotated corners
   public static Picture rotate(Picture img, int degrees) {
-    Picture result = new Picture(img);
-    Pixel[][] srcPixels = img.getPixels2D();
-    Pixel[][] dstPixels = result.getPixels2D();
-    
-    // pick the right rotation matrix based on angle
-    Matrix2by2 rotation;
-    if (degrees == 90) rotation = Matrix2by2.rotation90();
-    else if (degrees == 180) rotation = Matrix2by2.rotation180();
-    else if (degrees == 270) rotation = Matrix2by2.rotation270();
-    else return result; // invalid angle, just return copy
-    
-    int h = srcPixels.length;
-    int w = srcPixels[0].length;
-    
-    for (int row = 0; row < h; row++) {
-      for (int col = 0; col < w; col++) {
-        // convert to coordinates relative to center
-        int centerRow = h / 2;
-        int centerCol = w / 2;
-        Vector1by2 orig = new Vector1by2(col - centerCol, row - centerRow);
-        // apply the rotation matrix
-        Vector1by2 rotated = Vector1by2.multiply(orig, rotation);
-        
-        // convert back to absolute coordinates
-        int newCol = (int)Math.round(rotated.getElement1()) + centerCol;
-        int newRow = (int)Math.round(rotated.getElement2()) + centerRow;
-        
-        // check if new position is in bounds
-        if (newRow >= 0 && newRow < h && newCol >= 0 && newCol < w) {
-          dstPixels[row][col].setColor(srcPixels[newRow][newCol].getColor());
-        } else {
-          dstPixels[row][col].setColor(Color.WHITE); // fill with white if out of bounds
-        }
-      }
+    if (RightAngleRotation.isRightAngle(degrees)) {
+      return RightAngleRotation.of(degrees).rotate(img);
     }
-    return result;
+    return rotate(img, degrees, Sampling.BILINEAR, true);
+  }
+  
+  // Rotate by any angle with a choice of sampling, and either grow the
+  // picture to fit or keep its size and crop the corners
+  public static Picture rotate(Picture img, double degrees, Sampling sampling, boolean expandCanvas) {
+    return AngleRotation.rotate(img, Math.toRadians(degrees), sampling, expandCanvas);
   }
   
   // Insert method - overlays small image on large with background removal
   public static Picture insert(Picture large, Picture small, int startRow, int startCol) {
-    Picture result = new Picture(large);
-    Pixel[][] largePixels = result.getPixels2D();
-    Pixel[][] smallPixels = small.getPixels2D();
-    
-    // loop through small image
-    for (int row = 0; row < smallPixels.length && (startRow + row) < largePixels.length; row++) {
-      for (int col = 0; col < smallPixels[0].length && (startCol + col) < largePixels[0].length; col++) {
-        Color c = smallPixels[row][col].getColor();
-        // only copy if its not white (or close to white)
-        if (c.getRed() < 250 || c.getGreen() < 250 || c.getBlue() < 250) {
-          largePixels[startRow + row][startCol + col].setColor(c);
-        }
-      }
-    }
-    return result;
+    return insert(large, OverlayMask.of(small), startRow, startCol);
+  }
+  
+  // Insert with an overlay whose near-white background was found already,
+  // for putting the same overlay on many pictures
+  public static Picture insert(Picture large, OverlayMask small, int startRow, int startCol) {
+    return small.insert(large, startRow, startCol);
   }
   
   // Unit tests for ImageApp methods
@@ -152,6 +108,7 @@ public class ImageApp
     Picture rot270 = rotate(testImg, 270);
     System.out.println("Test 4 - Rotations: 90°, 180°, 270° completed");
     assert rot90 != null && rot180 != null && rot270 != null : "Rotation failed";
+    assert rot90.getWidth() == testImg.getHeight() && rot90.getHeight() == testImg.getWidth() : "90 should swap size";
     System.out.println("✓ Rotate works");
     
     // Test insert
@@ -242,99 +199,18 @@ public class ImageApp
     grayscaleImg.explore();
     System.out.println("Image #3: Grayscale image displayed");
 
-    // Image #4 Using the original image and pixels, rotate it 180 degrees
-    Picture upsidedownImage = new Picture(pictureFile);
-    Pixel[][] upsideDownPixels = upsidedownImage.getPixels2D();
-    
-    // Rotate 180 degrees using matrix multiplication approach
-    Matrix2by2 rot180 = Matrix2by2.rotation180();
-    int height = origPixels.length;
-    int width = origPixels[0].length;
-    
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        // Transform coordinates relative to center
-        int centerRow = height / 2;
-        int centerCol = width / 2;
-        int relRow = row - centerRow;
-        int relCol = col - centerCol;
-        
-        // Apply rotation matrix
-        Vector1by2 original = new Vector1by2(relCol, relRow);
-        Vector1by2 rotated = Vector1by2.multiply(original, rot180);
-        
-        // Convert back to absolute coordinates
-        int newCol = (int)Math.round(rotated.getElement1()) + centerCol;
-        int newRow = (int)Math.round(rotated.getElement2()) + centerRow;
-        
-        // Check bounds and copy pixel
-        if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
-          upsideDownPixels[row][col].setColor(origPixels[newRow][newCol].getColor());
-        } else {
-          upsideDownPixels[row][col].setColor(Color.WHITE);
-        }
-      }
-    }
+    // Image #4 Using the original image, rotate it 180 degrees
+    Picture upsidedownImage = rotate(new Picture(pictureFile), 180);
     upsidedownImage.explore();
     System.out.println("Image #4: 180-degree rotated image displayed");
 
-    // Image #5 Using the original image and pixels, rotate image 90 degrees counterclockwise
-    Picture rotateImg = new Picture(pictureFile);
-    Pixel[][] rotatePixels = rotateImg.getPixels2D();
-    
-    // Rotate 90 degrees counterclockwise using matrix multiplication
-    Matrix2by2 rot90 = Matrix2by2.rotation90();
-    
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        int centerRow = height / 2;
-        int centerCol = width / 2;
-        int relRow = row - centerRow;
-        int relCol = col - centerCol;
-        
-        Vector1by2 original = new Vector1by2(relCol, relRow);
-        Vector1by2 rotated = Vector1by2.multiply(original, rot90);
-        
-        int newCol = (int)Math.round(rotated.getElement1()) + centerCol;
-        int newRow = (int)Math.round(rotated.getElement2()) + centerRow;
-        
-        if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
-          rotatePixels[row][col].setColor(origPixels[newRow][newCol].getColor());
-        } else {
-          rotatePixels[row][col].setColor(Color.WHITE);
-        }
-      }
-    }
+    // Image #5 Using the original image, rotate image 90 degrees counterclockwise
+    Picture rotateImg = rotate(new Picture(pictureFile), 90);
     rotateImg.explore();
     System.out.println("Image #5: 90-degree counterclockwise rotated image displayed");
 
-    // Image #6 Using the original image and pixels, rotate image 270 degrees (-90)
-    Picture rotateImg2 = new Picture(pictureFile);
-    Pixel[][] rotatePixels2 = rotateImg2.getPixels2D();
-    
-    // Rotate 270 degrees counterclockwise (90 clockwise) using matrix multiplication
-    Matrix2by2 rot270 = Matrix2by2.rotation270();
-    
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        int centerRow = height / 2;
-        int centerCol = width / 2;
-        int relRow = row - centerRow;
-        int relCol = col - centerCol;
-        
-        Vector1by2 original = new Vector1by2(relCol, relRow);
-        Vector1by2 rotated = Vector1by2.multiply(original, rot270);
-        
-        int newCol = (int)Math.round(rotated.getElement1()) + centerCol;
-        int newRow = (int)Math.round(rotated.getElement2()) + centerRow;
-        
-        if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
-          rotatePixels2[row][col].setColor(origPixels[newRow][newCol].getColor());
-        } else {
-          rotatePixels2[row][col].setColor(Color.WHITE);
-        }
-      }
-    }
+    // Image #6 Using the original image, rotate image 270 degrees (-90)
+    Picture rotateImg2 = rotate(new Picture(pictureFile), 270);
     rotateImg2.explore();
     System.out.println("Image #6: 270-degree counterclockwise rotated image displayed");
 
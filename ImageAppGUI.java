@@ -1,13 +1,31 @@
 import java.awt.*;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 
 /**
  * ImageAppGUI - Interactive image manipulation with GUI controls
  * Features: Dropdown menus for image selection, rotation buttons, color effects
+ * 
+ * Pictures are computed on a background worker so the window stays responsive.
+ * Big pictures that are not cached yet are first computed from a small proxy
+ * (decoded from every nth pixel) and shown as a preview, which is replaced by
+ * the full size picture when it is ready.
+ * 
+ * Results are shown in one explorer window that is reused for every apply;
+ * the new picture is swapped in without copying it.
+ * Clicks close together are merged into one job for the latest choices, and
+ * changing a dropdown cancels the job that is running.
  */
 public class ImageAppGUI extends JFrame {
     
+    // longest side of the quick preview
+    private static final int PREVIEW_SIZE = 512;
+    // where the overlay goes on the full size background
+    private static final int OVERLAY_ROW = 50;
+    private static final int OVERLAY_COL = 50;
+    
     private Picture currentPicture;
     private String currentBackgroundImage;
     private String currentOverlayImage;
@@ -22,6 +40,14 @@ public class ImageAppGUI extends JFrame {
     private JComboBox<String> bgRotateDropdown;
     private JComboBox<String> overlayRotateDropdown;
     private JButton applyButton;
+    private JProgressBar progressBar;
+    
+    // the job computing the picture, if any
+    private SwingWorker<Picture, Picture> worker;
+    // the window showing the result, reused until the user closes it
+    private PictureExplorer explorer;
+    // waits for clicks to stop before starting a job
+    private Timer applyTimer;
     
     public ImageAppGUI() {
         setTitle("ImageApp - Interactive Image Manipulation");
@@ -91,6 +117,22 @@ public class ImageAppGUI extends JFrame {
         applyButton.addActionListener(e -> applyChanges());
         controlPanel.add(applyButton);
         
+        // Progress of the background job
+        controlPanel.add(new JLabel("Status:"));
+        progressBar = new JProgressBar();
+        progressBar.setStringPainted(true);
+        progressBar.setString("Ready");
+        controlPanel.add(progressBar);
+        
+        // a newer choice makes the running job useless
+        applyTimer = new Timer(150, e -> startWorker());
+        applyTimer.setRepeats(false);
+        JComboBox<?>[] dropdowns = {backgroundDropdown, bgColorEffectDropdown, bgRotateDropdown,
+                                    overlayDropdown, overlayColorEffectDropdown, overlayRotateDropdown};
+        for (JComboBox<?> dropdown : dropdowns) {
+            dropdown.addActionListener(e -> cancelWorker());
+        }
+        
         add(controlPanel, BorderLayout.NORTH);
         
         setVisible(true);
@@ -118,6 +160,19 @@ public class ImageAppGUI extends JFrame {
     
     
     private void applyChanges() {
+        // start (or restart) the wait, so only the last of several quick clicks runs
+        applyTimer.restart();
+    }
+    
+    private void cancelWorker() {
+        if (worker != null && !worker.isDone()) {
+            worker.cancel(true);
+            progressBar.setIndeterminate(false);
+            progressBar.setString("Cancelled");
+        }
+    }
+    
+    private void startWorker() {
         String background = (String) backgroundDropdown.getSelectedItem();
         String overlay = (String) overlayDropdown.getSelectedItem();
         String bgColorEffect = (String) bgColorEffectDropdown.getSelectedItem();
@@ -130,169 +185,160 @@ public class ImageAppGUI extends JFrame {
         }
         
         try {
-            // Load background image
             currentBackgroundImage = "lib/" + background;
-            Picture workingPicture = new Picture(currentBackgroundImage);
-            Pixel[][] pixels = workingPicture.getPixels2D();
-            
-            // Apply background color effect
-            if (bgColorEffect != null && !bgColorEffect.equals("None")) {
-                applyColorEffect(pixels, bgColorEffect);
-            }
-            
-            // Apply background rotation
-            int bgRotationAngle = getRotationAngle(bgRotation);
-            if (bgRotationAngle != 0) {
-                pixels = applyRotation(pixels, bgRotationAngle);
-                workingPicture = createPictureFromPixels(pixels);
-            }
-            
-            // Apply overlay
+            String overlayImage = null;
             if (overlay != null && !overlay.equals("None")) {
                 currentOverlayImage = "lib2/" + overlay;
-                int overlayRotationAngle = getRotationAngle(overlayRotation);
-                applyOverlayWithEffects(workingPicture, currentOverlayImage, overlayColorEffect, overlayRotationAngle);
+                overlayImage = currentOverlayImage;
             }
+            ResultCache.Recipe recipe = buildRecipe(currentBackgroundImage, bgColorEffect, bgRotation,
+                                                    overlayImage, overlayColorEffect, overlayRotation, 1);
             
-            // Display the result
-            currentPicture = workingPicture;
-            workingPicture.explore();
+            // A big picture that has not been computed before gets a preview first;
+            // with no steps the result is just the decoded file
+            int subsampling = PictureCache.getSubsampling(currentBackgroundImage, PREVIEW_SIZE);
+            boolean ready = recipe.getStepCount() == 0 ? PictureCache.shared().contains(currentBackgroundImage)
+                : ResultCache.shared().contains(recipe);
+            ResultCache.Recipe previewRecipe = (subsampling > 1 && !ready)
+                ? buildRecipe(currentBackgroundImage, bgColorEffect, bgRotation,
+                              overlayImage, overlayColorEffect, overlayRotation, subsampling)
+                : null;
+            
+            // Only the steps not seen before are computed, off the event thread
+            cancelWorker();
+            progressBar.setIndeterminate(true);
+            progressBar.setString("Working on " + background + "...");
+            long start = System.currentTimeMillis();
+            worker = new SwingWorker<Picture, Picture>() {
+                @Override
+                protected Picture doInBackground() {
+                    if (previewRecipe != null) {
+                        publish(ResultCache.shared().compute(previewRecipe));
+                    }
+                    return ResultCache.shared().compute(recipe);
+                }
+                
+                @Override
+                protected void process(List<Picture> previews) {
+                    if (worker != this || isCancelled()) {
+                        return;
+                    }
+                    showResult(previews.get(previews.size() - 1), "Preview of " + background);
+                    progressBar.setString("Preview shown, working on full size...");
+                }
+                
+                @Override
+                protected void done() {
+                    // a newer job owns the progress bar now
+                    if (worker != this || isCancelled()) {
+                        return;
+                    }
+                    progressBar.setIndeterminate(false);
+                    try {
+                        // Display the result
+                        currentPicture = get();
+                        showResult(currentPicture, background);
+                        progressBar.setString("Done in " + (System.currentTimeMillis() - start) + " ms");
+                    } catch (InterruptedException | ExecutionException e) {
+                        progressBar.setString("Failed");
+                        e.printStackTrace();
+                    }
+                }
+            };
+            worker.execute();
             
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
     
-    private int getRotationAngle(String rotationChoice) {
-        if (rotationChoice == null || rotationChoice.equals("None (0°)")) {
-            return 0;
-        } else if (rotationChoice.equals("90° Clockwise")) {
-            return 270; // 90 clockwise = 270 counter-clockwise
-        } else if (rotationChoice.equals("90° Counter-Clockwise")) {
-            return 90;
-        } else if (rotationChoice.equals("180° Flip")) {
-            return 180;
+    /**
+     * Show a picture in the result window, opening it only if needed. The
+     * picture is shown as is (it may be shared by ResultCache, and the
+     * explorer never changes it), and the one shown before is let go.
+     */
+    private void showResult(Picture picture, String title) {
+        if (explorer == null || !explorer.isOpen()) {
+            explorer = new PictureExplorer(picture);
+        } else {
+            explorer.setPicture(picture);
         }
-        return 0;
+        explorer.setTitle(title);
     }
     
-    private void applyColorEffect(Pixel[][] pixels, String effect) {
-        // loop through all pixels
-        for (int row = 0; row < pixels.length; row++) {
-            for (int col = 0; col < pixels[0].length; col++) {
-                Color originalColor = pixels[row][col].getColor();
-                int r = originalColor.getRed();
-                int g = originalColor.getGreen();
-                int b = originalColor.getBlue();
-                
-                Color newColor;
-                if (effect.equals("Recolor (BRG)")) {
-                    newColor = new Color(b, r, g);
-                } else if (effect.equals("Negative")) {
-                    newColor = new Color(255 - r, 255 - g, 255 - b);
-                } else if (effect.equals("Grayscale")) {
-                    int avg = (r + g + b) / 3;
-                    newColor = new Color(avg, avg, avg);
-                } else {
-                    newColor = originalColor;
-                }
-                
-                pixels[row][col].setColor(newColor);
-            }
+    /**
+     * The recipe for the background, and the overlay put on top if there is
+     * one, each with its color effect then rotation
+     * @param subsampling 1 for full size, or n to work from every nth pixel
+     *                    of both pictures (the overlay position shrinks the same)
+     */
+    private static ResultCache.Recipe buildRecipe(String backgroundImage, String bgColorEffect, String bgRotation,
+                                                  String overlayImage, String overlayColorEffect,
+                                                  String overlayRotation, int subsampling) {
+        ResultCache.Recipe recipe = layerRecipe(backgroundImage, bgColorEffect, bgRotation, subsampling);
+        if (overlayImage != null) {
+            ResultCache.Recipe overlayRecipe = layerRecipe(overlayImage, overlayColorEffect, overlayRotation,
+                                                           subsampling);
+            int row = Math.round((float) OVERLAY_ROW / subsampling);
+            int col = Math.round((float) OVERLAY_COL / subsampling);
+            recipe.then("insert (" + overlayRecipe.key(overlayRecipe.getStepCount()) + ") at " + row + "," + col,
+                        layer -> {
+                // the overlay's mask is made once per overlay recipe
+                OverlayMask overlay = OverlayMask.kept(overlayRecipe.key(overlayRecipe.getStepCount()),
+                                                       () -> ResultCache.shared().compute(overlayRecipe));
+                return ImageApp.insert(layer, overlay, row, col);
+            });
         }
+        return recipe;
     }
     
-    private Pixel[][] applyRotation(Pixel[][] originalPixels, int angle) {
-        int height = originalPixels.length;
-        int width = originalPixels[0].length;
-        
-        // get the right rotation matrix
-        Matrix2by2 rotMatrix;
-        if (angle == 90) {
-            rotMatrix = Matrix2by2.rotation90();
-        } else if (angle == 180) {
-            rotMatrix = Matrix2by2.rotation180();
-        } else if (angle == 270) {
-            rotMatrix = Matrix2by2.rotation270();
-        } else {
-            return originalPixels;
+    /**
+     * A recipe for one picture with a color effect then a rotation, computed
+     * in one pass. Kept results are reused by ResultCache, and the file is
+     * decoded through PictureCache.
+     */
+    private static ResultCache.Recipe layerRecipe(String fileName, String effectChoice, String rotationChoice,
+                                                  int subsampling) {
+        String fileKey = PictureCache.getFileKey(fileName);
+        String name = (fileKey == null ? fileName : fileKey) + (subsampling > 1 ? " every " + subsampling : "");
+        ResultCache.Recipe recipe = new ResultCache.Recipe(name,
+                                                           () -> PictureCache.shared().get(fileName, subsampling));
+        ColorOp effect = getColorEffect(effectChoice);
+        int angle = getRotationAngle(rotationChoice);
+        if (effect != ColorOp.IDENTITY || angle != 0) {
+            recipe.then(effectChoice + ", " + rotationChoice, source -> {
+                PixelPipeline pipeline = new PixelPipeline(source);
+                pipeline.getBackground().addColorEffect(effect).addRotation(angle);
+                return pipeline.render();
+            });
         }
-        
-        Picture rotatedPicture = new Picture(height, width);
-        Pixel[][] rotatedPixels = rotatedPicture.getPixels2D();
-        
-        // rotate around center
-        int centerRow = height / 2;
-        int centerCol = width / 2;
-        
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                int relRow = row - centerRow;
-                int relCol = col - centerCol;
-                
-                // use vector multiplication
-                Vector1by2 original = new Vector1by2(relCol, relRow);
-                Vector1by2 rotated = Vector1by2.multiply(original, rotMatrix);
-                
-                int newCol = (int)Math.round(rotated.getElement1()) + centerCol;
-                int newRow = (int)Math.round(rotated.getElement2()) + centerRow;
-                
-                if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
-                    rotatedPixels[row][col].setColor(originalPixels[newRow][newCol].getColor());
-                } else {
-                    rotatedPixels[row][col].setColor(Color.WHITE);
-                }
-            }
-        }
-        
-        return rotatedPixels;
+        return recipe;
     }
     
-    private void applyOverlayWithEffects(Picture basePicture, String overlayPath, String colorEffect, int rotation) {
-        Picture overlayPicture = new Picture(overlayPath);
-        Pixel[][] overlayPixels = overlayPicture.getPixels2D();
-        
-        // apply effects to overlay
-        if (colorEffect != null && !colorEffect.equals("None")) {
-            applyColorEffect(overlayPixels, colorEffect);
-        }
-        
-        if (rotation != 0) {
-            overlayPixels = applyRotation(overlayPixels, rotation);
-        }
-        
-        Pixel[][] basePixels = basePicture.getPixels2D();
-        
-        int startRow = 50;
-        int startCol = 50;
-        
-        for (int row = 0; row < overlayPixels.length && (startRow + row) < basePixels.length; row++) {
-            for (int col = 0; col < overlayPixels[0].length && (startCol + col) < basePixels[0].length; col++) {
-                Color overlayColor = overlayPixels[row][col].getColor();
-                
-                // skip white pixels
-                if (overlayColor.getRed() < 250 || 
-                    overlayColor.getGreen() < 250 || 
-                    overlayColor.getBlue() < 250) {
-                    basePixels[startRow + row][startCol + col].setColor(overlayColor);
-                }
-            }
+    private static int getRotationAngle(String rotationChoice) {
+        if (rotationChoice == null || rotationChoice.equals("None (0°)")) {
+            return 0;
+        } else if (rotationChoice.equals("90° Clockwise")) {
+            return 270; // 90 clockwise = 270 counter-clockwise
+        } else if (rotationChoice.equals("90° Counter-Clockwise")) {
+            return 90;
+        } else if (rotationChoice.equals("180° Flip")) {
+            return 180;
         }
+        return 0;
     }
     
-    private Picture createPictureFromPixels(Pixel[][] pixels) {
-        int height = pixels.length;
-        int width = pixels[0].length;
-        Picture picture = new Picture(height, width);
-        Pixel[][] newPixels = picture.getPixels2D();
-        
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                newPixels[row][col].setColor(pixels[row][col].getColor());
-            }
+    private static ColorOp getColorEffect(String effectChoice) {
+        if (effectChoice == null || effectChoice.equals("None")) {
+            return ColorOp.identity();
+        } else if (effectChoice.equals("Recolor (BRG)")) {
+            return ColorOp.recolorBRG();
+        } else if (effectChoice.equals("Negative")) {
+            return ColorOp.negative();
+        } else if (effectChoice.equals("Grayscale")) {
+            return ColorOp.grayscale();
         }
-        
-        return picture;
+        return ColorOp.identity();
     }
     
     public static void main(String[] args) {
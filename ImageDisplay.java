@@ -1,9 +1,20 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Class to display an image and the current location with a + sign
  * 
+ * The image can be zoomed.  Only the part inside the area being painted
+ * is drawn, scaled as it is drawn, so no zoomed copy of the whole image
+ * is ever made.  Zoomed out views are drawn from an ImagePyramid level.
+ * 
+ * Zoomed views are drawn in tiles that are kept, so repainting the same
+ * area again (like when the + moves) is just a copy.  Moving the + only
+ * repaints the small areas where it was and where it goes.
+ * 
  * @author Barb Ericson ericson@cc.gatech.edu
  */
 public class ImageDisplay extends JPanel implements Scrollable
@@ -12,6 +23,22 @@ public class ImageDisplay extends JPanel implements Scrollable
   /////////////////////////// fields (attributes ///////////////////////////
   /** the image to draw */
   private Image image;         
+  /** smaller copies of the image for zooming out, made when first needed */
+  private ImagePyramid pyramid;
+  /** how big the image is drawn, 1 is full size */
+  private double zoom = 1;
+  /** the width and height of a zoomed tile, in screen pixels */
+  private static final int TILE_SIZE = 256;
+  /** the most zoomed tiles to keep (16 MB) */
+  private static final int MAX_TILES = 64;
+  /** zoomed tiles by row and column, least recently used first */
+  private Map<Long, BufferedImage> tiles = 
+    new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest)
+      {
+        return size() > MAX_TILES;
+      }
+    };
   /** the preferred size of the display */
   private Dimension prefSize;  
   /** the current x index */
@@ -72,8 +99,7 @@ public class ImageDisplay extends JPanel implements Scrollable
    */
   public void setCurrentX(int x) 
   {
-    currentX = x;
-    repaint();
+    setCurrentLocation(x, currentY);
   }
   
   /**
@@ -82,8 +108,34 @@ public class ImageDisplay extends JPanel implements Scrollable
    */
   public void setCurrentY(int y) 
   {
+    setCurrentLocation(currentX, y);
+  }
+  
+  /**
+   * Method to move the current location, repainting only the area
+   * around where the + was and where it is now
+   * @param x the x value to use
+   * @param y the y value to use
+   */
+  public void setCurrentLocation(int x, int y)
+  {
+    if (x == currentX && y == currentY)
+      return;
+    repaint(getCrossBounds(currentX, currentY));
+    currentX = x;
     currentY = y;
-    repaint();
+    repaint(getCrossBounds(currentX, currentY));
+  }
+  
+  /**
+   * Method to get the area the + and its outline cover
+   * @param x the x of the center of the +
+   * @param y the y of the center of the +
+   * @return the area to repaint
+   */
+  private Rectangle getCrossBounds(int x, int y)
+  {
+    return new Rectangle(x - 4, y - 4, 9, 9);
   }
   
   /**
@@ -93,7 +145,45 @@ public class ImageDisplay extends JPanel implements Scrollable
   public void setImage(Image theImage)
   {
     image = theImage;
-    setPreferredSize(new Dimension(image.getWidth(this),image.getHeight(this)));
+    imageChanged();
+  }
+  
+  /**
+   * Method to call when the pixels of the image have changed, so the
+   * zoomed copies are made again
+   */
+  public void imageChanged()
+  {
+    pyramid = null;
+    tiles.clear();
+    updateSize();
+  }
+  
+  /**
+   * Method to get the zoom
+   * @return how big the image is drawn, 1 is full size
+   */
+  public double getZoom() { return zoom; }
+  
+  /**
+   * Method to set the zoom.  Nothing is scaled until it is painted.
+   * @param zoom how big to draw the image, 1 is full size
+   */
+  public void setZoom(double zoom)
+  {
+    this.zoom = zoom;
+    tiles.clear();
+    updateSize();
+  }
+  
+  /**
+   * Method to make the preferred size fit the zoomed image
+   */
+  private void updateSize()
+  {
+    prefSize = new Dimension((int) (image.getWidth(this) * zoom),
+                             (int) (image.getHeight(this) * zoom));
+    setPreferredSize(prefSize);
     repaint();
   }
   
@@ -158,13 +248,13 @@ public class ImageDisplay extends JPanel implements Scrollable
     int xEnd = currentX + num;
     int yStart = currentY - num;
     int yEnd = currentY + num;
-    int width = image.getWidth(this);
+    int width = (int) (image.getWidth(this) * zoom);
     int maxX = width - 1;
-    int height = image.getHeight(this);
+    int height = (int) (image.getHeight(this) * zoom);
     int maxY = height - 1;
     
-    // draw the image
-    g.drawImage(image,0,0,this);
+    // draw the part of the image that is being painted
+    drawVisibleImage(g);
     
     // check if the current index is in the image
     if (currentX >= 0 && currentX < width &&
@@ -212,4 +302,109 @@ public class ImageDisplay extends JPanel implements Scrollable
     }
   }
   
+  /**
+   * Method to draw only the part of the image inside the clip.  At full
+   * size the image is drawn straight, otherwise the zoomed tiles the clip
+   * touches are drawn, making any that aren't kept yet.
+   * @param g the graphics object for drawing with
+   */
+  private void drawVisibleImage(Graphics g)
+  {
+    Rectangle clip = g.getClipBounds();
+    if (clip == null)
+      clip = new Rectangle(0, 0, getWidth(), getHeight());
+    
+    if (zoom == 1)
+    {
+      g.drawImage(image, clip.x, clip.y, clip.x + clip.width, clip.y + clip.height,
+                  clip.x, clip.y, clip.x + clip.width, clip.y + clip.height, this);
+      return;
+    }
+    
+    int width = (int) (image.getWidth(this) * zoom);
+    int height = (int) (image.getHeight(this) * zoom);
+    int firstCol = Math.max(0, clip.x / TILE_SIZE);
+    int firstRow = Math.max(0, clip.y / TILE_SIZE);
+    int lastCol = Math.min(width - 1, clip.x + clip.width - 1) / TILE_SIZE;
+    int lastRow = Math.min(height - 1, clip.y + clip.height - 1) / TILE_SIZE;
+    for (int row = firstRow; row <= lastRow; row++)
+    {
+      for (int col = firstCol; col <= lastCol; col++)
+      {
+        g.drawImage(getTile(row, col, width, height), col * TILE_SIZE, row * TILE_SIZE, this);
+      }
+    }
+  }
+  
+  /**
+   * Method to get a zoomed tile, drawing it if it isn't kept
+   * @param row the tile row
+   * @param col the tile column
+   * @param width the zoomed image width
+   * @param height the zoomed image height
+   * @return the tile
+   */
+  private BufferedImage getTile(int row, int col, int width, int height)
+  {
+    Long key = ((long) row << 32) | col;
+    BufferedImage tile = tiles.get(key);
+    if (tile == null)
+    {
+      int x = col * TILE_SIZE;
+      int y = row * TILE_SIZE;
+      boolean opaque = image instanceof BufferedImage 
+        && !((BufferedImage) image).getColorModel().hasAlpha();
+      tile = new BufferedImage(Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y),
+                               opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+      Graphics2D tileGraphics = tile.createGraphics();
+      tileGraphics.translate(-x, -y);
+      tileGraphics.setClip(x, y, tile.getWidth(), tile.getHeight());
+      drawScaledImage(tileGraphics);
+      tileGraphics.dispose();
+      tiles.put(key, tile);
+    }
+    return tile;
+  }
+  
+  /**
+   * Method to draw the part of the image inside the clip, scaled by the zoom
+   * @param g the graphics object for drawing with
+   */
+  private void drawScaledImage(Graphics g)
+  {
+    Image source = image;
+    double scale = zoom;
+    
+    // zoomed out, draw from the smallest level still at least as big
+    if (zoom < 1 && image instanceof BufferedImage)
+    {
+      if (pyramid == null)
+        pyramid = new ImagePyramid((BufferedImage) image);
+      int level = ImagePyramid.levelFor(zoom);
+      source = pyramid.getLevel(level);
+      scale = zoom * ImagePyramid.getScale(level);
+    }
+    int sourceWidth = source.getWidth(this);
+    int sourceHeight = source.getHeight(this);
+    
+    // the source pixels under the clip, and one more each way so
+    // filtering at the edge of the clip sees the same neighbors
+    Rectangle clip = g.getClipBounds();
+    int left = Math.max(0, (int) Math.floor(clip.x / scale) - 1);
+    int top = Math.max(0, (int) Math.floor(clip.y / scale) - 1);
+    int right = Math.min(sourceWidth, (int) Math.ceil((clip.x + clip.width) / scale) + 1);
+    int bottom = Math.min(sourceHeight, (int) Math.ceil((clip.y + clip.height) / scale) + 1);
+    if (left >= right || top >= bottom)
+      return;
+    
+    // scale the graphics, not the image, and draw just those pixels
+    Graphics2D g2 = (Graphics2D) g.create();
+    g2.scale(scale, scale);
+    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, scale < 1
+                          ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                          : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+    g2.drawImage(source, left, top, right, bottom, left, top, right, bottom, this);
+    g2.dispose();
+  }
+  
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ImagePyramid holds an image at full size, half size, quarter size and so
+ * on, for drawing an image zoomed out. Drawing from the level closest in
+ * size is faster than shrinking the full image every time, and looks better
+ * because each level averages every pixel (a 2x2 box filter) instead of
+ * skipping pixels.
+ *
+ * Levels are only made when first asked for, each from the one before.
+ */
+public class ImagePyramid {
+    private final List<BufferedImage> levels = new ArrayList<>();
+
+    /**
+     * @param image the full size image, level 0
+     */
+    public ImagePyramid(BufferedImage image) {
+        levels.add(image);
+    }
+
+    /**
+     * @param zoom how big the image is drawn, 1 is full size
+     * @return the smallest level that is still at least as big as the zoom
+     */
+    public static int levelFor(double zoom) {
+        int level = 0;
+        while (zoom <= 0.5 / (1 << level) && level < 30) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @param level 0 for full size, 1 for half size, ...
+     * @return the image at that level, made now if it is not made yet
+     */
+    public synchronized BufferedImage getLevel(int level) {
+        while (levels.size() <= level) {
+            BufferedImage last = levels.get(levels.size() - 1);
+            if (last.getWidth() == 1 && last.getHeight() == 1) {
+                return last; // cannot get smaller
+            }
+            levels.add(halve(last));
+        }
+        return levels.get(level);
+    }
+
+    /**
+     * @param level a level
+     * @return how much smaller the level is than full size, 2 to the level
+     */
+    public static int getScale(int level) {
+        return 1 << level;
+    }
+
+    /**
+     * Make an image half the size, each pixel the average of a 2x2 block. An
+     * odd last row or column averages the pixels it has.
+     * @param image the image
+     * @return a new image, rounded up to whole pixels
+     */
+    public static BufferedImage halve(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int halfWidth = (width + 1) / 2;
+        int halfHeight = (height + 1) / 2;
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage result = new BufferedImage(halfWidth, halfHeight,
+                                                 alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] out = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+
+        // two rows at a time
+        int[] rows = new int[2 * width];
+        for (int y = 0; y < halfHeight; y++) {
+            int count = Math.min(2, height - 2 * y);
+            image.getRGB(0, 2 * y, width, count, rows, 0, width);
+            for (int x = 0; x < halfWidth; x++) {
+                int across = Math.min(2, width - 2 * x);
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int j = 0; j < count; j++) {
+                    for (int i = 0; i < across; i++) {
+                        int p = rows[j * width + 2 * x + i];
+                        a += p >>> 24;
+                        r += (p >> 16) & 0xff;
+                        g += (p >> 8) & 0xff;
+                        b += p & 0xff;
+                    }
+                }
+                int n = count * across;
+                out[y * halfWidth + x] = ((a + n / 2) / n << 24) | ((r + n / 2) / n << 16)
+                                         | ((g + n / 2) / n << 8) | ((b + n / 2) / n);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Unit tests for ImagePyramid
+     */
+    public static void runUnitTests() {
+        System.out.println("=== ImagePyramid Unit Tests ===");
+
+        // Test 1: halving averages 2x2 blocks and keeps odd edges
+        BufferedImage image = new BufferedImage(5, 3, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 5; x++) {
+                image.setRGB(x, y, (x * 40 << 16) | (y * 80 << 8) | 10);
+            }
+        }
+        BufferedImage half = halve(image);
+        System.out.println("Test 1 - 5x3 halves to " + half.getWidth() + "x" + half.getHeight());
+        assert half.getWidth() == 3 && half.getHeight() == 2 : "Half size is wrong";
+        assert half.getRGB(0, 0) == (0xff000000 | (20 << 16) | (40 << 8) | 10) : "Block average is wrong";
+        assert half.getRGB(2, 1) == image.getRGB(4, 2) : "Odd corner should be its own pixel";
+        assert half.getRGB(1, 1) == (0xff000000 | (100 << 16) | (160 << 8) | 10) : "Odd row average is wrong";
+        System.out.println("✓ Halving works correctly");
+
+        // Test 2: levels are made once, down to one pixel
+        ImagePyramid pyramid = new ImagePyramid(image);
+        assert pyramid.getLevel(1) == pyramid.getLevel(1) : "Levels should be kept";
+        BufferedImage smallest = pyramid.getLevel(10);
+        assert smallest.getWidth() == 1 && smallest.getHeight() == 1 : "Smallest level should be 1x1";
+        System.out.println("Test 2 - Level 2 is " + pyramid.getLevel(2).getWidth() + "x"
+                           + pyramid.getLevel(2).getHeight());
+        System.out.println("✓ Levels work correctly");
+
+        // Test 3: the level for a zoom is the smallest one still big enough
+        System.out.println("Test 3 - Levels for 25%, 50%, 75%, 200%: " + levelFor(0.25) + ", "
+                           + levelFor(0.5) + ", " + levelFor(0.75) + ", " + levelFor(2));
+        assert levelFor(0.25) == 2 && levelFor(0.5) == 1 && levelFor(0.75) == 0 && levelFor(2) == 0
+            : "Level choice is wrong";
+        assert levelFor(0.3) == 1 : "30% should use the half size level";
+        System.out.println("✓ Level choice works correctly");
+
+        System.out.println("=== All ImagePyramid tests passed! ===\n");
+    }
+}
@@ -0,0 +1,452 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LayerStack puts any number of pictures on top of a background picture.
+ * Each layer has a position, an opacity, a blend mode (see BlendMode) and
+ * optionally a mask (see OverlayMask) that says which of its pixels are
+ * used and how much. Layers are drawn in the order they are added, so the
+ * last one added is on top. A layer picture with alpha is also mixed by its
+ * own alpha.
+ *
+ * The result is worked out in square tiles, which run in parallel. For each
+ * tile the layers are looked at from the top down until one is found that
+ * hides everything under it in that tile: a NORMAL layer at full opacity
+ * whose mask and alpha fully cover the tile. The tile starts from that
+ * layer, and the layers under it, and the background, are never read there.
+ * The counts of tiles and of layer tiles skipped this way are kept. Where a
+ * layer has a mask, only the mask's runs of covered pixels are read.
+ *
+ * Pictures are read when render() runs, so changes to their colors before
+ * then are seen. Which pixels of a layer hide what is under them is worked
+ * out the first time it is needed and kept, so a layer picture's alpha must
+ * not change after that. The result has no alpha.
+ */
+public class LayerStack {
+    // the size of the square tiles the result is worked out in
+    static final int TILE = 64;
+
+    private final Picture background;
+    private final List<Layer> layers = new ArrayList<>();
+
+    private final LongAdder tiles = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * One picture in the stack and how it is drawn
+     */
+    public static class Layer {
+        private final Picture picture;
+        private int row, col;
+        private double opacity = 1;
+        private BlendMode mode = BlendMode.NORMAL;
+        private OverlayMask mask;
+
+        // how many pixels do not fully hide what is under them, in the
+        // rectangle from (0, 0) up to but not including (x, y); null until
+        // needed, and not made at all if every pixel hides what is under it
+        private int[] seeThrough;
+        private boolean seeThroughFound;
+
+        Layer(Picture picture, int row, int col) {
+            this.picture = picture;
+            this.row = row;
+            this.col = col;
+        }
+
+        /**
+         * @param row the row of the background where the layer's top goes
+         * @param col the column of the background where the layer's left goes
+         * @return this layer
+         */
+        public Layer setPosition(int row, int col) {
+            this.row = row;
+            this.col = col;
+            return this;
+        }
+
+        /**
+         * @param opacity how much of the layer shows, from 0 (none) to 1 (all)
+         * @return this layer
+         */
+        public Layer setOpacity(double opacity) {
+            if (!(opacity >= 0 && opacity <= 1)) {
+                throw new IllegalArgumentException("opacity must be from 0 to 1 but was " + opacity);
+            }
+            this.opacity = opacity;
+            return this;
+        }
+
+        public Layer setBlendMode(BlendMode mode) {
+            if (mode == null) {
+                throw new IllegalArgumentException("blend mode must not be null");
+            }
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * @param mask how much of each pixel is used, the size of the layer; null uses every pixel
+         * @return this layer
+         */
+        public Layer setMask(OverlayMask mask) {
+            if (mask != null && (mask.getWidth() != picture.getWidth() || mask.getHeight() != picture.getHeight())) {
+                throw new IllegalArgumentException("mask is " + mask.getWidth() + "x" + mask.getHeight()
+                                                   + " but the layer is " + picture.getWidth() + "x"
+                                                   + picture.getHeight());
+            }
+            this.mask = mask;
+            seeThrough = null;
+            seeThroughFound = false;
+            return this;
+        }
+
+        /**
+         * Leave out the near-white pixels of the layer, like ImageApp.insert
+         * @return this layer
+         */
+        public Layer keyWhite() {
+            return setMask(OverlayMask.of(picture));
+        }
+
+        public Picture getPicture() {
+            return picture;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public int getCol() {
+            return col;
+        }
+
+        public double getOpacity() {
+            return opacity;
+        }
+
+        public BlendMode getBlendMode() {
+            return mode;
+        }
+
+        public OverlayMask getMask() {
+            return mask;
+        }
+
+        // true if the layer can hide what is under it somewhere
+        boolean canHide() {
+            return mode == BlendMode.NORMAL && opacity == 1;
+        }
+
+        // count the pixels that do not fully hide what is under them, once
+        void findSeeThrough() {
+            if (seeThroughFound) {
+                return;
+            }
+            seeThroughFound = true;
+            if (mask == null && !picture.hasAlpha()) {
+                return;
+            }
+            int width = picture.getWidth(), height = picture.getHeight();
+            int[] data = picture.getPixelData();
+            int alphaMask = picture.getAlphaMask();
+            int stride = width + 1;
+            int[] sums = new int[stride * (height + 1)];
+            for (int y = 0; y < height; y++) {
+                int rowSum = 0;
+                for (int x = 0; x < width; x++) {
+                    boolean clear = (data[y * width + x] | alphaMask) >>> 24 != 255
+                                    || (mask != null && mask.getCoverage(x, y) != 255);
+                    rowSum += clear ? 1 : 0;
+                    sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + rowSum;
+                }
+            }
+            seeThrough = sums;
+        }
+
+        // true if the layer hides everything under the rectangle, given in background
+        // pixels; findSeeThrough must have run
+        boolean hides(int x, int y, int w, int h) {
+            int left = x - col, top = y - row;
+            if (!canHide() || left < 0 || top < 0
+                    || left + w > picture.getWidth() || top + h > picture.getHeight()) {
+                return false;
+            }
+            if (seeThrough == null) {
+                return true;
+            }
+            int stride = picture.getWidth() + 1;
+            int right = left + w, bottom = top + h;
+            return seeThrough[bottom * stride + right] - seeThrough[top * stride + right]
+                   - seeThrough[bottom * stride + left] + seeThrough[top * stride + left] == 0;
+        }
+
+        // mix the layer into the tile at (x, y) of the background
+        void drawOnto(int[] tile, int x, int y, int w, int h) {
+            int fromX = Math.max(x, col), toX = Math.min(x + w, col + picture.getWidth());
+            int fromY = Math.max(y, row), toY = Math.min(y + h, row + picture.getHeight());
+            if (fromX >= toX || fromY >= toY) {
+                return;
+            }
+            int strength = (int) Math.round(opacity * 255);
+            for (int j = fromY; j < toY; j++) {
+                int top = j - row;
+                int at = (j - y) * w + (col - x);
+                if (mask == null) {
+                    drawRun(tile, at, top, fromX - col, toX - col, false, strength);
+                    continue;
+                }
+                // the background between the mask's runs is never read
+                for (int i = mask.spanFrom(top); i < mask.spanTo(top); i++) {
+                    int start = Math.max(mask.spanStart(i), fromX - col);
+                    int end = Math.min(mask.spanEnd(i), toX - col);
+                    if (start < end) {
+                        drawRun(tile, at, top, start, end, mask.isBlendSpan(i), strength);
+                    }
+                }
+            }
+        }
+
+        // mix columns start to end of the layer's row top into the tile, where
+        // column 0 of the layer is at index at
+        private void drawRun(int[] tile, int at, int top, int start, int end, boolean partly, int strength) {
+            int[] data = picture.getPixelData();
+            int alphaMask = picture.getAlphaMask();
+            int from = top * picture.getWidth();
+            if (!partly && strength == 255 && mode == BlendMode.NORMAL && alphaMask != 0) {
+                // every pixel is copied, keeping the alpha underneath
+                for (int i = start; i < end; i++) {
+                    tile[at + i] = (tile[at + i] & 0xff000000) | (data[from + i] & 0x00ffffff);
+                }
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                int over = data[from + i] | alphaMask;
+                int coverage = partly ? mask.getCoverage(i, top) : 255;
+                // opacity times mask times alpha, each out of 255
+                int a = (strength * coverage * (over >>> 24) + 255 * 255 / 2) / (255 * 255);
+                if (a == 0) {
+                    continue;
+                }
+                int under = tile[at + i];
+                int mixed = mode.blend(under, over);
+                tile[at + i] = a == 255 ? mixed : mix(under, mixed, a);
+            }
+        }
+
+        // a of 255 of the way from under to mixed, keeping the alpha of under
+        private static int mix(int under, int mixed, int a) {
+            int result = under & 0xff000000;
+            for (int shift = 0; shift < 24; shift += 8) {
+                int u = (under >> shift) & 0xff;
+                int m = (mixed >> shift) & 0xff;
+                result |= ((m * a + u * (255 - a) + 127) / 255) << shift;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param background the picture at the bottom, which sets the size of the result
+     */
+    public LayerStack(Picture background) {
+        this.background = background;
+    }
+
+    /**
+     * Put a picture on top of the stack, NORMAL at full opacity with no mask
+     * @param picture the layer's picture
+     * @param row the row of the background where the layer's top goes
+     * @param col the column of the background where the layer's left goes
+     * @return the layer, to set how it is drawn
+     */
+    public Layer add(Picture picture, int row, int col) {
+        Layer layer = new Layer(picture, row, col);
+        layers.add(layer);
+        return layer;
+    }
+
+    /**
+     * @return the layers from the bottom up, not including the background
+     */
+    public List<Layer> getLayers() {
+        return Collections.unmodifiableList(layers);
+    }
+
+    /**
+     * Work out the stack
+     * @return a new picture the size of the background
+     */
+    public Picture render() {
+        int width = background.getWidth();
+        int height = background.getHeight();
+        Picture result = new Picture(height, width);
+        int[] out = result.getPixelData();
+        int across = (width + TILE - 1) / TILE;
+        int down = (height + TILE - 1) / TILE;
+        for (Layer layer : layers) {
+            if (layer.canHide()) {
+                layer.findSeeThrough();
+            }
+        }
+
+        // tiles are independent, so they are handed out like rows of TILE x TILE pixels
+        RowBandExecutor.forEachBand(TILE * TILE, across * down, (fromTile, toTile) -> {
+            int[] tile = new int[TILE * TILE];
+            for (int t = fromTile; t < toTile; t++) {
+                int x = t % across * TILE, y = t / across * TILE;
+                int w = Math.min(TILE, width - x), h = Math.min(TILE, height - y);
+                renderTile(tile, x, y, w, h);
+                for (int j = 0; j < h; j++) {
+                    System.arraycopy(tile, j * w, out, (y + j) * width + x, w);
+                }
+            }
+        });
+        return result;
+    }
+
+    private void renderTile(int[] tile, int x, int y, int w, int h) {
+        tiles.increment();
+
+        // from the top down, find the layer that hides the rest
+        int bottom = layers.size() - 1;
+        while (bottom >= 0 && !layers.get(bottom).hides(x, y, w, h)) {
+            bottom--;
+        }
+
+        if (bottom < 0) {
+            background.getRegion(x, y, w, h, tile, 0, w);
+        } else {
+            // the background and every layer under this one are skipped
+            skipped.add(bottom + 1);
+            Arrays.fill(tile, 0, w * h, 0xff000000);
+        }
+        for (int i = Math.max(bottom, 0); i < layers.size(); i++) {
+            layers.get(i).drawOnto(tile, x, y, w, h);
+        }
+    }
+
+    /**
+     * @return how many tiles have been worked out
+     */
+    public long getTiles() {
+        return tiles.sum();
+    }
+
+    /**
+     * @return how many times a layer or the background was not read in a
+     *         tile because a layer above it hid it
+     */
+    public long getSkippedLayerTiles() {
+        return skipped.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "LayerStack[" + background.getWidth() + "x" + background.getHeight() + ", " + layers.size()
+               + " layers, " + getTiles() + " tiles, " + getSkippedLayerTiles() + " layer tiles skipped]";
+    }
+
+    /**
+     * Unit tests for LayerStack
+     */
+    public static void runUnitTests() {
+        System.out.println("=== LayerStack Unit Tests ===");
+
+        Picture background = new Picture(150, 140);
+        background.forEachPixel((x, y, p) -> 0xff000000 | (x << 16) | (y << 8) | 120);
+        Picture sticker = new Picture(40, 50);
+        sticker.forEachPixel((x, y, p) -> (x - 25) * (x - 25) + (y - 20) * (y - 20) < 300
+                             ? 0xff000000 | (200 << 16) | (x * 4 << 8) | (y * 5) : 0xffffffff);
+
+        // Test 1: one keyed NORMAL layer is the same as ImageApp.insert
+        LayerStack stack = new Picture(background).layers();
+        stack.add(sticker, 30, 70).keyWhite();
+        Picture layered = stack.render();
+        System.out.println("Test 1 - One keyed layer: " + stack);
+        assert Picture.isSame(layered, ImageApp.insert(background, sticker, 30, 70)) : "Should match insert";
+        System.out.println("✓ Keyed layers work correctly");
+
+        // Test 2: each blend mode mixes the channels as it should
+        int under = 0xff40c080, over = 0xff808020;
+        System.out.println("Test 2 - Multiply, screen, overlay, add: "
+                           + Integer.toHexString(BlendMode.MULTIPLY.blend(under, over)) + ", "
+                           + Integer.toHexString(BlendMode.SCREEN.blend(under, over)) + ", "
+                           + Integer.toHexString(BlendMode.OVERLAY.blend(under, over)) + ", "
+                           + Integer.toHexString(BlendMode.ADD.blend(under, over)));
+        assert BlendMode.MULTIPLY.blend(under, over) == 0xff206010 : "Multiply is wrong";
+        assert BlendMode.SCREEN.blend(under, over) == 0xffa0e090 : "Screen is wrong";
+        assert BlendMode.OVERLAY.blend(under, over) == 0xff40c021 : "Overlay is wrong";
+        assert BlendMode.ADD.blend(under, over) == 0xffc0ffa0 : "Add is wrong";
+        assert BlendMode.NORMAL.blend(under, over) == over : "Normal is wrong";
+        System.out.println("✓ Blend modes work correctly");
+
+        // Test 3: half opacity mixes halfway, and a layer off the edge is clipped
+        Picture gray = new Picture(20, 20);
+        gray.forEachPixel((x, y, p) -> 0xff808080);
+        stack = new LayerStack(background);
+        stack.add(gray, -10, 130).setOpacity(0.5).setBlendMode(BlendMode.MULTIPLY);
+        layered = stack.render();
+        int p = background.getBasicPixel(135, 5);
+        int mixed = BlendMode.MULTIPLY.blend(p, 0xff808080);
+        int a = (128 * 255 * 255 + 255 * 255 / 2) / (255 * 255);
+        int expectedRed = ((mixed >> 16 & 0xff) * a + (p >> 16 & 0xff) * (255 - a) + 127) / 255;
+        System.out.println("Test 3 - Half multiply at (135,5): " + Integer.toHexString(layered.getBasicPixel(135, 5)));
+        assert (layered.getBasicPixel(135, 5) >> 16 & 0xff) == expectedRed : "Half opacity is wrong";
+        assert layered.getBasicPixel(129, 5) == background.getBasicPixel(129, 5) : "Pixels left of the layer should not change";
+        assert layered.getBasicPixel(135, 10) == background.getBasicPixel(135, 10) : "Pixels under the layer should not change";
+        System.out.println("✓ Opacity and clipping work correctly");
+
+        // Test 4: an opaque layer over the whole picture hides everything under it
+        Picture cover = new Picture(150, 140);
+        cover.forEachPixel((x, y, q) -> 0xff336699);
+        stack = new LayerStack(background);
+        stack.add(sticker, 10, 10).keyWhite();
+        stack.add(cover, 0, 0);
+        stack.add(sticker, 60, 60).keyWhite().setBlendMode(BlendMode.SCREEN);
+        layered = stack.render();
+        System.out.println("Test 4 - Opaque layer in the middle: " + stack);
+        assert stack.getTiles() == 9 && stack.getSkippedLayerTiles() == 9 * 2 : "Lower layers should be skipped";
+        LayerStack expected = new LayerStack(cover);
+        expected.add(sticker, 60, 60).keyWhite().setBlendMode(BlendMode.SCREEN);
+        assert Picture.isSame(layered, expected.render()) : "Skipping should not change the result";
+        System.out.println("✓ Early out works correctly");
+
+        // Test 5: tiles on many threads give the same result as one thread
+        stack = new LayerStack(background);
+        stack.add(sticker, 5, 5).keyWhite().setOpacity(0.7);
+        stack.add(gray, 50, 50).setBlendMode(BlendMode.OVERLAY);
+        stack.add(sticker, 90, 80).setMask(OverlayMask.of(sticker, 2)).setBlendMode(BlendMode.ADD);
+        int threads = RowBandExecutor.getParallelism();
+        int cutoff = RowBandExecutor.getSequentialCutoff();
+        RowBandExecutor.setParallelism(4);
+        RowBandExecutor.setSequentialCutoff(TILE * TILE);
+        Picture parallel = stack.render();
+        RowBandExecutor.setParallelism(1);
+        Picture sequential = stack.render();
+        RowBandExecutor.setParallelism(threads);
+        RowBandExecutor.setSequentialCutoff(cutoff);
+        System.out.println("Test 5 - Three layers on 4 threads and on 1");
+        assert Picture.isSame(parallel, sequential) : "Threads should not change the result";
+        System.out.println("✓ Parallel tiles work correctly");
+
+        // Test 6: only the tiles under the opaque part of a layer with alpha are skipped
+        Picture glass = new Picture(new java.awt.image.BufferedImage(140, 150, java.awt.image.BufferedImage.TYPE_INT_ARGB));
+        glass.forEachPixel((x, y, q) -> x < 64 ? 0xff204060 : 0x80204060);
+        stack = new LayerStack(background);
+        stack.add(glass, 0, 0);
+        stack.render();
+        layered = stack.render();
+        System.out.println("Test 6 - Left column of tiles opaque, rendered twice: " + stack);
+        assert stack.getTiles() == 18 && stack.getSkippedLayerTiles() == 2 * 3 : "Only the opaque column should skip";
+        assert layered.getBasicPixel(10, 10) == 0xff204060 : "Opaque part should be copied";
+        int half = layered.getBasicPixel(100, 10);
+        assert Math.abs((half & 0xff) - (0x60 * 128 + 120 * 127 + 127) / 255) <= 1 : "See-through part should be mixed";
+        System.out.println("✓ Alpha works correctly");
+
+        System.out.println("=== All LayerStack tests passed! ===\n");
+    }
+}
@@ -0,0 +1,836 @@
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * LazyPicture records picture operations instead of running them. Each
+ * operation adds a node to a graph, and nothing is computed until the result
+ * is asked for with render(), preview(), getBasicPixel(), write() or explore().
+ *
+ * Before computing, the graph is simplified:
+ * - chained color effects are fused into one ColorOp
+ * - color effects are moved after rotations and other transforms, so
+ *   neighbouring transforms multiply into one matrix and the picture is
+ *   resampled once. A transform that moves whole pixels and leaves no fill
+ *   gets a plain color effect after it. Any other transform runs the effect
+ *   itself on just the pixels it reads from its input, so its white fill is
+ *   not changed; the effect then runs on the blended pixels, which can
+ *   differ by rounding
+ * - a scale on top of an insert is pushed into both pictures, so a preview
+ *   never builds the full size composite
+ * - a crop of a transform becomes part of the transform's matrix; a
+ *   transform that cuts off part of its input like this is not fused with
+ *   a transform after it, which would see the cut off part again
+ *
+ * Then only the requested rectangle is computed. The rectangle is worked out
+ * backwards through the graph: color effects need the same pixels, crops
+ * move the rectangle, transforms map its corners back to the input, and
+ * convolutions grow it by their radius. Each node asks its input for just
+ * those pixels, and an inserted picture that is outside the rectangle is
+ * never computed at all. getSourceRegion() reports what would be read
+ * without computing anything.
+ */
+public class LazyPicture {
+    private static final int WHITE = 0xffffffff;
+    // overlay pixels with all three values at or above this are treated as background
+    private static final int WHITE_THRESHOLD = 250;
+
+    private final Node node;
+
+    private LazyPicture(Node node) {
+        this.node = node;
+    }
+
+    /**
+     * Start a graph from a picture. The picture is read when the result is
+     * computed, so changes to it before then are seen.
+     * @param picture the source picture
+     * @return the lazy picture
+     */
+    public static LazyPicture of(Picture picture) {
+        return new LazyPicture(new Source(picture));
+    }
+
+    public LazyPicture color(ColorOp op) {
+        return new LazyPicture(new ColorNode(node, op));
+    }
+
+    public LazyPicture recolor() {
+        return color(ColorOp.recolorBRG());
+    }
+
+    public LazyPicture negative() {
+        return color(ColorOp.negative());
+    }
+
+    public LazyPicture grayscale() {
+        return color(ColorOp.grayscale());
+    }
+
+    /**
+     * Blur by averaging each pixel with the pixels around it
+     * @param radius how many pixels out to average; 0 does nothing
+     * @return the lazy picture
+     */
+    public LazyPicture blur(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must not be negative: " + radius);
+        }
+        if (radius == 0) {
+            return this;
+        }
+        int size = 2 * radius + 1;
+        double[] weights = new double[size * size];
+        Arrays.fill(weights, 1.0 / weights.length);
+        return convolve(weights);
+    }
+
+    /**
+     * Replace each pixel with a weighted sum of the pixels around it. Pixels
+     * past the edge of the picture count as the nearest edge pixel, and
+     * alpha is kept from the center pixel.
+     * @param weights a square kernel with an odd size, row by row
+     * @return the lazy picture
+     */
+    public LazyPicture convolve(double[] weights) {
+        int size = (int) Math.round(Math.sqrt(weights.length));
+        if (size * size != weights.length || size % 2 == 0) {
+            throw new IllegalArgumentException("kernel must be square with an odd size, got "
+                                               + weights.length + " weights");
+        }
+        return new LazyPicture(new ConvolveNode(node, weights.clone(), size));
+    }
+
+    /**
+     * Keep only part of the picture
+     * @param x the left of the part
+     * @param y the top of the part
+     * @param width the width of the part
+     * @param height the height of the part
+     * @return the lazy picture, the size of the part
+     */
+    public LazyPicture crop(int x, int y, int width, int height) {
+        return new LazyPicture(new CropNode(node, checkRegion(x, y, width, height)));
+    }
+
+    /**
+     * Rotate about the center and grow to fit, like ImageApp.rotate
+     * @param degrees the angle counter-clockwise; right angles are exact
+     * @return the lazy picture
+     */
+    public LazyPicture rotate(double degrees) {
+        return transform(new TransformChain().rotate(degrees), Sampling.BILINEAR);
+    }
+
+    /**
+     * Apply a chain of geometric steps, sized to fit
+     * @param chain the steps
+     * @param sampling how to read between pixels, not used for exact chains
+     * @return the lazy picture
+     */
+    public LazyPicture transform(TransformChain chain, Sampling sampling) {
+        Matrix3by3 matrix = new Matrix3by3(chain.getMatrix());
+        return new LazyPicture(TransformNode.fit(node, matrix, chain.isExact() ? Sampling.NEAREST : sampling));
+    }
+
+    /**
+     * Put a picture on top of this one, skipping its near-white pixels, like
+     * ImageApp.insert
+     * @param small the picture to put on top
+     * @param startRow the row for its top
+     * @param startCol the column for its left side
+     * @return the lazy picture
+     */
+    public LazyPicture insert(LazyPicture small, int startRow, int startCol) {
+        return new LazyPicture(new InsertNode(node, small.node, startRow, startCol));
+    }
+
+    public int getWidth() {
+        return node.width;
+    }
+
+    public int getHeight() {
+        return node.height;
+    }
+
+    /**
+     * @return the simplified graph that would be computed, for checking what it does
+     */
+    public String explain() {
+        return optimize(node).toString();
+    }
+
+    /**
+     * Compute the whole picture
+     * @return a new picture
+     */
+    public Picture render() {
+        return render(0, 0, getWidth(), getHeight());
+    }
+
+    /**
+     * Compute part of the picture
+     * @param x the left of the part
+     * @param y the top of the part
+     * @param width the width of the part
+     * @param height the height of the part
+     * @return a new picture the size of the part
+     */
+    public Picture render(int x, int y, int width, int height) {
+        int[] pixels = optimize(node).evaluate(checkRegion(x, y, width, height));
+        Picture result = new Picture(height, width);
+        result.setRegion(0, 0, width, height, pixels, 0, width);
+        return result;
+    }
+
+    /**
+     * Work out which pixels of a source picture computing part of the result
+     * would read, without computing anything
+     * @param source a picture this graph was started from with of()
+     * @param x the left of the part
+     * @param y the top of the part
+     * @param width the width of the part
+     * @param height the height of the part
+     * @return the smallest rectangle holding every pixel read, empty if none are
+     */
+    public Rectangle getSourceRegion(Picture source, int x, int y, int width, int height) {
+        Map<Picture, Rectangle> found = new IdentityHashMap<>();
+        optimize(node).addSourceRegions(checkRegion(x, y, width, height), found);
+        Rectangle region = found.get(source);
+        return region == null ? new Rectangle() : region;
+    }
+
+    private Rectangle checkRegion(int x, int y, int width, int height) {
+        Rectangle region = new Rectangle(x, y, width, height);
+        if (width <= 0 || height <= 0 || !new Rectangle(0, 0, getWidth(), getHeight()).contains(region)) {
+            throw new IndexOutOfBoundsException("region " + region + " is not inside "
+                                                + getWidth() + "x" + getHeight());
+        }
+        return region;
+    }
+
+    /**
+     * Compute a small version of the picture, working at the small size
+     * instead of computing everything and then shrinking it
+     * @param longestSide the most pixels the width or height can have
+     * @return a new picture, the full picture if it is already small enough
+     */
+    public Picture preview(int longestSide) {
+        int width = getWidth();
+        int height = getHeight();
+        double scale = (double) longestSide / Math.max(width, height);
+        if (scale >= 1) {
+            return render();
+        }
+        int previewWidth = Math.max(1, (int) Math.round(width * scale));
+        int previewHeight = Math.max(1, (int) Math.round(height * scale));
+        // scale about the outside corner of the top left pixel so the edges line up
+        Matrix3by3 shrink = Matrix3by3.about(
+            Matrix3by3.scale((double) previewWidth / width, (double) previewHeight / height), -0.5, -0.5);
+        return new LazyPicture(new TransformNode(node, shrink, Sampling.BILINEAR, previewWidth, previewHeight)).render();
+    }
+
+    /**
+     * Compute one pixel
+     * @param x the column
+     * @param y the row
+     * @return the packed (alpha, red, green, blue) value
+     */
+    public int getBasicPixel(int x, int y) {
+        return render(x, y, 1, 1).getBasicPixel(0, 0);
+    }
+
+    public boolean write(String fileName) {
+        return render().write(fileName);
+    }
+
+    public void explore() {
+        render().explore();
+    }
+
+    /**
+     * Simplify a graph (see the class comment)
+     */
+    static Node optimize(Node node) {
+        if (node instanceof ColorNode) {
+            ColorNode color = (ColorNode) node;
+            Node input = optimize(color.input);
+            if (color.op == ColorOp.IDENTITY) {
+                return input;
+            }
+            if (input instanceof ColorNode) {
+                ColorNode inner = (ColorNode) input;
+                return new ColorNode(inner.input, inner.op.andThen(color.op));
+            }
+            return new ColorNode(input, color.op);
+        }
+
+        if (node instanceof TransformNode) {
+            TransformNode transform = (TransformNode) node;
+            Node input = optimize(transform.input);
+            if (input instanceof ColorNode) {
+                // run the effect after the transform so transforms can meet and fuse
+                ColorNode color = (ColorNode) input;
+                ColorOp op = color.op.andThen(transform.op);
+                if (TransformNode.isExact(transform.matrix) && transform.coversAll()) {
+                    return optimize(new ColorNode(transform.withInput(color.input, ColorOp.IDENTITY), op));
+                }
+                // only on the pixels read from the input, not the fill
+                return optimize(transform.withInput(color.input, op));
+            }
+            if (input instanceof TransformNode && transform.op == ColorOp.IDENTITY
+                    && ((TransformNode) input).showsAll()) {
+                // the inner effect only ran on pixels read from the source, which stay so
+                TransformNode inner = (TransformNode) input;
+                Matrix3by3 matrix = inner.matrix.then(transform.matrix);
+                Sampling sampling = TransformNode.isExact(matrix) ? Sampling.NEAREST
+                    : (inner.sampling.getRadius() > transform.sampling.getRadius() ? inner.sampling : transform.sampling);
+                return new TransformNode(inner.input, matrix, sampling, transform.width, transform.height, inner.op);
+            }
+            if (input instanceof InsertNode && TransformNode.isScale(transform.matrix)) {
+                return optimize(((InsertNode) input).scaled(transform));
+            }
+            return transform.withInput(input);
+        }
+
+        if (node instanceof CropNode) {
+            CropNode crop = (CropNode) node;
+            Node input = optimize(crop.input);
+            Rectangle part = crop.part;
+            if (input instanceof TransformNode) {
+                // move the transform's output instead of copying part of it
+                TransformNode transform = (TransformNode) input;
+                Matrix3by3 matrix = transform.matrix.then(Matrix3by3.translation(-part.x, -part.y));
+                return new TransformNode(transform.input, matrix, transform.sampling, part.width, part.height,
+                                         transform.op);
+            }
+            if (input instanceof CropNode) {
+                CropNode inner = (CropNode) input;
+                part = new Rectangle(part);
+                part.translate(inner.part.x, inner.part.y);
+                input = inner.input;
+            }
+            return new CropNode(input, part);
+        }
+
+        if (node instanceof ConvolveNode) {
+            ConvolveNode convolve = (ConvolveNode) node;
+            return new ConvolveNode(optimize(convolve.input), convolve.weights, convolve.size);
+        }
+
+        if (node instanceof InsertNode) {
+            InsertNode insert = (InsertNode) node;
+            return new InsertNode(optimize(insert.background), optimize(insert.overlay), insert.row, insert.col);
+        }
+        return node;
+    }
+
+    /**
+     * One operation in the graph
+     */
+    abstract static class Node {
+        final int width, height;
+
+        Node(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Compute a rectangle of this node's output
+         * @param region the rectangle, inside this node
+         * @return the packed pixels of the rectangle, row by row
+         */
+        abstract int[] evaluate(Rectangle region);
+
+        /**
+         * Work out which source pixels computing a rectangle would read
+         * @param region the rectangle, inside this node
+         * @param found each source picture's rectangle so far, grown to fit
+         */
+        abstract void addSourceRegions(Rectangle region, Map<Picture, Rectangle> found);
+    }
+
+    /**
+     * Reads pixels straight from a picture
+     */
+    static class Source extends Node {
+        final Picture picture;
+        // how many pixels have been read, for the unit tests
+        long pixelsRead;
+
+        Source(Picture picture) {
+            super(picture.getWidth(), picture.getHeight());
+            this.picture = picture;
+        }
+
+        int[] evaluate(Rectangle region) {
+            pixelsRead += (long) region.width * region.height;
+            return picture.getRegion(region.x, region.y, region.width, region.height, null, 0, region.width);
+        }
+
+        void addSourceRegions(Rectangle region, Map<Picture, Rectangle> found) {
+            Rectangle before = found.get(picture);
+            found.put(picture, before == null ? new Rectangle(region) : before.union(region));
+        }
+
+        public String toString() {
+            return "source " + width + "x" + height;
+        }
+    }
+
+    /**
+     * Runs a color effect on each pixel
+     */
+    static class ColorNode extends Node {
+        final Node input;
+        final ColorOp op;
+
+        ColorNode(Node input, ColorOp op) {
+            super(input.width, input.height);
+            this.input = input;
+            this.op = op;
+        }
+
+        int[] evaluate(Rectangle region) {
+            int[] pixels = input.evaluate(region);
+            int width = region.width;
+            RowBandExecutor.forEachBand(width, region.height,
+                                        (fromRow, toRow) -> op.applyAll(pixels, fromRow * width, toRow * width));
+            return pixels;
+        }
+
+        void addSourceRegions(Rectangle region, Map<Picture, Rectangle> found) {
+            input.addSourceRegions(region, found);
+        }
+
+        public String toString() {
+            return "color(" + input + ")";
+        }
+    }
+
+    /**
+     * Keeps part of its input
+     */
+    static class CropNode extends Node {
+        final Node input;
+        final Rectangle part;
+
+        CropNode(Node input, Rectangle part) {
+            super(part.width, part.height);
+            this.input = input;
+            this.part = part;
+        }
+
+        int[] evaluate(Rectangle region) {
+            return input.evaluate(inputRegion(region));
+        }
+
+        void addSourceRegions(Rectangle region, Map<Picture, Rectangle> found) {
+            input.addSourceRegions(inputRegion(region), found);
+        }
+
+        private Rectangle inputRegion(Rectangle region) {
+            return new Rectangle(region.x + part.x, region.y + part.y, region.width, region.height);
+        }
+
+        public String toString() {
+            return "crop " + part.x + "," + part.y + " " + width + "x" + height + "(" + input + ")";
+        }
+    }
+
+    /**
+     * Replaces each pixel with a weighted sum of the square around it
+     */
+    static class ConvolveNode extends Node {
+        final Node input;
+        final double[] weights;
+        final int size;
+
+        ConvolveNode(Node input, double[] weights, int size) {
+            super(input.width, input.height);
+            this.input = input;
+            this.weights = weights;
+            this.size = size;
+        }
+
+        int[] evaluate(Rectangle region) {
+            Rectangle need = inputRegion(region);
+            int[] in = input.evaluate(need);
+            int[] out = new int[region.width * region.height];
+            int radius = size / 2;
+            int left = region.x - need.x;
+            int top = region.y - need.y;
+            RowBandExecutor.forEachBand(region.width, region.height, (fromRow, toRow) -> {
+                for (int row = fromRow; row < toRow; row++) {
+                    int y = row + top;
+                    for (int col = 0; col < region.width; col++) {
+                        int x = col + left;
+                        double red = 0, green = 0, blue = 0;
+                        for (int j = -radius; j <= radius; j++) {
+                            // past the edge of the input counts as the edge
+                            int rowStart = Math.max(0, Math.min(need.height - 1, y + j)) * need.width;
+                            for (int i = -radius; i <= radius; i++) {
+                                int p = in[rowStart + Math.max(0, Math.min(need.width - 1, x + i))];
+                                double w = weights[(j + radius) * size + i + radius];
+                                red += ((p >> 16) & 0xff) * w;
+                                green += ((p >> 8) & 0xff) * w;
+                                blue += (p & 0xff) * w;
+                            }
+                        }
+                        out[row * region.width + col] = (in[y * need.width + x] & 0xff000000)
+                            | (toByte(red) << 16) | (toByte(green) << 8) | toByte(blue);
+                    }
+                }
+            });
+            return out;
+        }
+
+        void addSourceRegions(Rectangle region, Map<Picture, Rectangle> found) {
+            input.addSourceRegions(inputRegion(region), found);
+        }
+
+        // the region grown by the kernel radius, kept inside the input
+        private Rectangle inputRegion(Rectangle region) {
+            Rectangle grown = new Rectangle(region);
+            grown.grow(size / 2, size / 2);
+            return grown.intersection(new Rectangle(0, 0, input.width, input.height));
+        }
+
+        private static int toByte(double value) {
+            return Math.max(0, Math.min(255, (int) Math.floor(value + 0.5)));
+        }
+
+        public String toString() {
+            return "convolve " + size + "x" + size + "(" + input + ")";
+        }
+    }
+
+    /**
+     * Moves pixels with a Matrix3by3 that takes input positions to output positions
+     */
+    static class TransformNode extends Node {
+        final Node input;
+        final Matrix3by3 matrix;
+        final Sampling sampling;
+        // runs on the pixels read from the input, not on the fill
+        final ColorOp op;
+
+        TransformNode(Node input, Matrix3by3 matrix, Sampling sampling, int width, int height) {
+            this(input, matrix, sampling, width, height, ColorOp.IDENTITY);
+        }
+
+        TransformNode(Node input, Matrix3by3 matrix, Sampling sampling, int width, int height, ColorOp op) {
+            super(width, height);
+            this.input = input;
+            this.matrix = matrix;
+            this.sampling = sampling;
+            this.op = op;
+        }
+
+        /**
+         * A transform moved so its output starts at (0, 0) and sized to fit
+         */
+        static TransformNode fit(Node input, Matrix3by3 matrix, Sampling sampling) {
+            Rectangle2D bounds = Warp.getOutputBounds(matrix, input.width, input.height);
+            Matrix3by3 placed = matrix.then(Matrix3by3.translation(-bounds.getX(), -bounds.getY()));
+            return new TransformNode(input, placed, sampling,
+                                     Warp.pixels(bounds.getWidth()), Warp.pixels(bounds.getHeight()));
+        }
+
+        TransformNode withInput(Node newInput) {
+            return withInput(newInput, op);
+        }
+
+        TransformNode withInput(Node newInput, ColorOp newOp) {
+            return new TransformNode(newInput, matrix, sampling, width, height, newOp);
+        }
+
+        // true if every input pixel lands inside the output, so nothing is cut off
+        boolean showsAll() {
+            Rectangle2D bounds = Warp.getOutputBounds(matrix, input.width, input.height);
+            return matrix.isAffine() && bounds.getX() >= -1e-6 && bounds.getY() >= -1e-6
+                && bounds.getMaxX() - 1 <= width - 1 + 1e-6 && bounds.getMaxY() - 1 <= height - 1 + 1e-6;
+        }
+
+        // true if every output pixel reads from the input, so no fill shows
+        boolean coversAll() {
+            Matrix3by3 toInput = matrix.inverse();
+            if (!toInput.isAffine()) {
+                return false;
+            }
+            Rectangle2D need = Warp.getOutputBounds(toInput, width, height);
+            return Sampling.covers(input.width, input.height, need.getX(), need.getY())
+                && Sampling.covers(input.width, input.height, need.getMaxX() - 1, need.getMaxY() - 1);
+        }
+
+        // true if whole pixels land on whole pixels
+        static boolean isExact(Matrix3by3 m) {
+            double a = Math.abs(m.getA()), b = Math.abs(m.getB());
+            double d = Math.abs(m.getD()), e = Math.abs(m.getE());
+            boolean swapOrKeep = (a == 1 && e == 1 && b == 0 && d == 0) || (a == 0 && e == 0 && b == 1 && d == 1);
+            return swapOrKeep && m.isAffine() && m.getG() == Math.rint(m.getG()) && m.getH() == Math.rint(m.getH());
+        }
+
+        // true if the matrix only scales (by positive amounts) and moves
+        static boolean isScale(Matrix3by3 m) {
+            return m.isAffine() && m.getB() == 0 && m.getD() == 0 && m.getA() > 0 && m.getE() > 0;
+        }
+
+        int[] evaluate(Rectangle region) {
+            int[] out = new int[region.width * region.height];
+            Matrix3by3 toInput = matrix.inverse();
+            Rectangle need = inputRegion(region, toInput);
+            if (need.isEmpty()) {
+                Arrays.fill(out, WHITE);
+                return out;
+            }
+
+            int[] in = input.evaluate(need);
+            int width = region.width;
+            RowBandExecutor.forEachBand(width, region.height, (fromRow, toRow) -> {
+                for (int row = fromRow; row < toRow; row++) {
+                    // input spot of the row's first pixel, relative to the part that was computed
+                    double x = region.x * toInput.getA() + (region.y + row) * toInput.getD() + toInput.getG() - need.x;
+                    double y = region.x * toInput.getB() + (region.y + row) * toInput.getE() + toInput.getH() - need.y;
+                    double w = region.x * toInput.getC() + (region.y + row) * toInput.getF() + toInput.getI();
+                    for (int col = 0; col < width; col++) {
+                        double sx = toInput.isAffine() ? x : (x + need.x) / w - need.x;
+                        double sy = toInput.isAffine() ? y : (y + need.y) / w - need.y;
+                        int p = sampling.sample(in, need.width, need.height, 0, sx, sy, WHITE);
+                        if (op != ColorOp.IDENTITY
+                                && Sampling.covers(input.width, input.height, sx + need.x, sy + need.y)) {
+                            p = op.apply(p);
+                        }
+                        out[row * width + col] = p;
+                        x += toInput.getA();
+                        y += toInput.getB();
+                        w += toInput.getC();
+                    }
+                }
+            });
+            return out;
+        }
+
+        void addSourceRegions(Rectangle region, Map<Picture, Rectangle> found) {
+            Rectangle need = inputRegion(region, matrix.inverse());
+            if (!need.isEmpty()) {
+                input.addSourceRegions(need, found);
+            }
+        }
+
+        // the input pixels that sampling anywhere in region can read
+        private Rectangle inputRegion(Rectangle region, Matrix3by3 toInput) {
+            Rectangle all = new Rectangle(0, 0, input.width, input.height);
+            if (!toInput.isAffine()) {
+                return all;
+            }
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            int right = region.x + region.width - 1;
+            int bottom = region.y + region.height - 1;
+            int[][] corners = {{region.x, region.y}, {right, region.y}, {right, bottom}, {region.x, bottom}};
+            for (int[] corner : corners) {
+                Vector1by2 p = toInput.transform(new Vector1by2(corner[0], corner[1]));
+                minX = Math.min(minX, p.getElement1());
+                maxX = Math.max(maxX, p.getElement1());
+                minY = Math.min(minY, p.getElement2());
+                maxY = Math.max(maxY, p.getElement2());
+            }
+            // one more pixel each way for rounding
+            int grow = sampling.getRadius() + 1;
+            int left = (int) Math.floor(minX) - grow;
+            int top = (int) Math.floor(minY) - grow;
+            return new Rectangle(left, top, (int) Math.ceil(maxX) + grow - left + 1,
+                                 (int) Math.ceil(maxY) + grow - top + 1).intersection(all);
+        }
+
+        public String toString() {
+            return "transform " + width + "x" + height + " " + sampling
+                   + (op == ColorOp.IDENTITY ? "" : " with color") + "(" + input + ")";
+        }
+    }
+
+    /**
+     * Puts an overlay on a background, skipping near-white overlay pixels
+     */
+    static class InsertNode extends Node {
+        final Node background, overlay;
+        final int row, col;
+
+        InsertNode(Node background, Node overlay, int row, int col) {
+            super(background.width, background.height);
+            this.background = background;
+            this.overlay = overlay;
+            this.row = row;
+            this.col = col;
+        }
+
+        /**
+         * The same insert with a scale applied to both pictures and the
+         * position, rounded to the nearest pixel
+         */
+        Node scaled(TransformNode scale) {
+            Node scaledBackground = scale.withInput(background);
+            Matrix3by3 placed = Matrix3by3.translation(col, row).then(scale.matrix);
+            Rectangle2D bounds = Warp.getOutputBounds(placed, overlay.width, overlay.height);
+            int newCol = (int) Math.round(bounds.getX());
+            int newRow = (int) Math.round(bounds.getY());
+            Node scaledOverlay = new TransformNode(overlay, placed.then(Matrix3by3.translation(-newCol, -newRow)),
+                                                   scale.sampling, Warp.pixels(bounds.getWidth()),
+                                                   Warp.pixels(bounds.getHeight()), scale.op);
+            return new InsertNode(scaledBackground, scaledOverlay, newRow, newCol);
+        }
+
+        int[] evaluate(Rectangle region) {
+            int[] pixels = background.evaluate(region);
+            Rectangle covered = new Rectangle(col, row, overlay.width, overlay.height).intersection(region);
+            if (covered.isEmpty()) {
+                // the overlay is not in this part, so it is never computed
+                return pixels;
+            }
+            int[] top = overlay.evaluate(new Rectangle(covered.x - col, covered.y - row,
+                                                       covered.width, covered.height));
+            for (int y = 0; y < covered.height; y++) {
+                int to = (covered.y - region.y + y) * region.width + (covered.x - region.x);
+                for (int x = 0; x < covered.width; x++) {
+                    int p = top[y * covered.width + x];
+                    // skip white pixels
+                    if (((p >> 16) & 0xff) < WHITE_THRESHOLD
+                            || ((p >> 8) & 0xff) < WHITE_THRESHOLD
+                            || (p & 0xff) < WHITE_THRESHOLD) {
+                        pixels[to + x] = (pixels[to + x] & 0xff000000) | (p & 0x00ffffff);
+                    }
+                }
+            }
+            return pixels;
+        }
+
+        void addSourceRegions(Rectangle region, Map<Picture, Rectangle> found) {
+            background.addSourceRegions(region, found);
+            Rectangle covered = new Rectangle(col, row, overlay.width, overlay.height).intersection(region);
+            if (!covered.isEmpty()) {
+                covered.translate(-col, -row);
+                overlay.addSourceRegions(covered, found);
+            }
+        }
+
+        public String toString() {
+            return "insert(" + background + ", " + overlay + " at " + row + "," + col + ")";
+        }
+    }
+
+    /**
+     * Unit tests for LazyPicture
+     */
+    public static void runUnitTests() {
+        System.out.println("=== LazyPicture Unit Tests ===");
+
+        Picture big = new Picture(90, 120);
+        big.forEachPixel((x, y, p) -> 0xff000000 | (x * 2 << 16) | (y * 2 << 8) | ((x ^ y) & 0xff));
+        Picture small = new Picture(20, 30);
+        small.forEachPixel((x, y, p) -> (x + y) % 4 == 0 ? 0xffffffff : 0xff102030 + x);
+
+        // Test 1: nothing runs until asked, then the result matches running each step
+        Source bigSource = new Source(big);
+        LazyPicture recipe = new LazyPicture(bigSource).grayscale().rotate(90).negative().rotate(180)
+                                 .insert(LazyPicture.of(small).recolor(), 10, 15);
+        assert bigSource.pixelsRead == 0 : "Nothing should be computed yet";
+        Picture eager = ImageApp.insert(ImageApp.rotate(ImageApp.negative(ImageApp.rotate(ImageApp.grayscale(big), 90)),
+                                                        180), ImageApp.recolor(small), 10, 15);
+        System.out.println("Test 1 - " + recipe.getWidth() + "x" + recipe.getHeight() + " recipe: " + recipe.explain());
+        assert Picture.isSame(recipe.render(), eager) : "Lazy result should match eager result";
+        System.out.println("✓ Lazy results match eager results");
+
+        // Test 2: color effects are fused and the two rotations are one transform
+        String plan = recipe.explain();
+        assert plan.indexOf("transform") == plan.lastIndexOf("transform") : "Rotations should fuse";
+        assert plan.indexOf("color(color") < 0 : "Color effects should fuse";
+        System.out.println("Test 2 - Plan has one transform and no stacked color effects");
+        System.out.println("✓ Fusing works correctly");
+
+        // Test 3: a region only reads what it needs and skips an overlay outside it
+        Source smallSource = new Source(small);
+        LazyPicture regionRecipe = new LazyPicture(bigSource).negative()
+                                       .insert(new LazyPicture(smallSource), 10, 15);
+        bigSource.pixelsRead = 0;
+        Picture corner = regionRecipe.render(60, 50, 25, 20);
+        assert bigSource.pixelsRead == 25 * 20 : "Only the region should be read";
+        assert smallSource.pixelsRead == 0 : "Overlay outside the region should not be computed";
+        assert corner.getBasicPixel(3, 4) == regionRecipe.render().getBasicPixel(63, 54) : "Region is wrong";
+        System.out.println("Test 3 - 25x20 region read " + 25 * 20 + " pixels and skipped the overlay");
+        System.out.println("✓ Region evaluation works correctly");
+
+        // Test 4: a preview is small and works at the small size
+        bigSource.pixelsRead = 0;
+        Picture preview = LazyPicture.of(big).rotate(90).grayscale().preview(32);
+        System.out.println("Test 4 - Preview " + preview.getWidth() + "x" + preview.getHeight());
+        assert preview.getWidth() == 24 && preview.getHeight() == 32 : "Preview size is wrong";
+        assert Math.abs(Pixel.getRed(preview.getBasicPixel(12, 16)) - Pixel.getGreen(preview.getBasicPixel(12, 16))) == 0
+            : "Preview should be gray";
+        System.out.println("✓ Previews work correctly");
+
+        // Test 5: a blurred part grows the source region by the radius and matches the whole blur
+        LazyPicture blurred = LazyPicture.of(big).grayscale().blur(2);
+        Rectangle read = blurred.getSourceRegion(big, 40, 30, 10, 5);
+        System.out.println("Test 5 - 10x5 part of a radius 2 blur reads " + read);
+        assert read.equals(new Rectangle(38, 28, 14, 9)) : "Blur should grow the region by 2";
+        assert blurred.getSourceRegion(big, 0, 0, 3, 3).equals(new Rectangle(0, 0, 5, 5)) : "Should stop at the edge";
+        Picture whole = blurred.render();
+        Picture part = blurred.render(40, 30, 10, 5);
+        assert part.getBasicPixel(0, 0) == whole.getBasicPixel(40, 30)
+            && part.getBasicPixel(9, 4) == whole.getBasicPixel(49, 34) : "Blurred part is wrong";
+        int sum = 0;
+        for (int y = 28; y <= 32; y++) {
+            for (int x = 38; x <= 42; x++) {
+                sum += ImageApp.grayscale(big).getBasicPixel(x, y) & 0xff;
+            }
+        }
+        assert (part.getBasicPixel(0, 0) & 0xff) == (int) Math.floor(sum / 25.0 + 0.5) : "Blur average is wrong";
+        System.out.println("✓ Convolution regions work correctly");
+
+        // Test 6: a crop of a rotation only rotates the part, and reads only what it needs
+        LazyPicture turned = LazyPicture.of(big).rotate(90);
+        LazyPicture cropped = turned.crop(20, 30, 15, 10);
+        System.out.println("Test 6 - Crop of a rotation: " + cropped.explain() + " reads "
+                           + cropped.getSourceRegion(big, 0, 0, 15, 10));
+        assert cropped.explain().indexOf("crop") < 0 : "Crop should fold into the transform";
+        assert Picture.isSame(cropped.render(), LazyPicture.of(turned.render()).crop(20, 30, 15, 10).render())
+            : "Cropped rotation is wrong";
+        Rectangle rotatedRead = cropped.getSourceRegion(big, 0, 0, 15, 10);
+        assert rotatedRead.width * rotatedRead.height < 20 * 20 : "Crop should read only a small part";
+        String keptAll = LazyPicture.of(big).rotate(90).crop(0, 0, 90, 120).rotate(-90).explain();
+        assert keptAll.indexOf("transform") == keptAll.lastIndexOf("transform")
+            : "A crop that keeps everything should still fuse";
+
+        // a crop between two rotations still cuts off what it cut off
+        LazyPicture cutTurn = LazyPicture.of(big).rotate(30).crop(5, 5, 20, 20).rotate(-30);
+        Picture stepwise = LazyPicture.of(LazyPicture.of(LazyPicture.of(big).rotate(30).render())
+                                          .crop(5, 5, 20, 20).render()).rotate(-30).render();
+        System.out.println("  Crop between rotations: " + cutTurn.explain());
+        assert Picture.isSame(cutTurn.render(), stepwise) : "Crop between rotations is wrong";
+        System.out.println("✓ Crops work correctly");
+
+        // Test 7: an effect before a rotation does not change the fill in the corners
+        LazyPicture negativeTurn = LazyPicture.of(big).negative().rotate(30);
+        Picture eagerTurn = ImageApp.rotate(ImageApp.negative(big), 30.0, Sampling.BILINEAR, true);
+        Picture lazyTurn = negativeTurn.render();
+        System.out.println("Test 7 - Negative then rotate 30: " + negativeTurn.explain() + ", corner "
+                           + Integer.toHexString(lazyTurn.getBasicPixel(0, 0)));
+        assert eagerTurn.getBasicPixel(0, 0) == WHITE : "Eager corner should be the fill";
+        assert lazyTurn.getBasicPixel(0, 0) == WHITE : "Corner fill should not get the effect";
+        assert lazyTurn.getBasicPixel(lazyTurn.getWidth() - 1, lazyTurn.getHeight() - 1) == WHITE
+            : "Corner fill should not get the effect";
+        Picture negativeFirst = LazyPicture.of(ImageApp.negative(big)).rotate(30).render();
+        int middle = lazyTurn.getBasicPixel(lazyTurn.getWidth() / 2, lazyTurn.getHeight() / 2);
+        int expectedMiddle = negativeFirst.getBasicPixel(lazyTurn.getWidth() / 2, lazyTurn.getHeight() / 2);
+        assert Math.abs(Pixel.getRed(middle) - Pixel.getRed(expectedMiddle)) <= 1 : "Inside should get the effect";
+        assert negativeTurn.render().getBasicPixel(0, 0) == LazyPicture.of(big).negative().rotate(30).rotate(0)
+            .render().getBasicPixel(0, 0) : "Fused transforms should keep the fill";
+        System.out.println("✓ Effects before transforms work correctly");
+
+        System.out.println("=== All LazyPicture tests passed! ===\n");
+    }
+}
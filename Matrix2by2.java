@@ -37,6 +37,18 @@ public class Matrix2by2 {
         return new Matrix2by2(0, 1, -1, 0);
     }
     
+    /**
+     * Create a rotation matrix for any angle. rotation(Math.PI / 2) is
+     * rotation90() (apart from rounding in the last digit).
+     * @param radians the angle
+     * @return rotation matrix
+     */
+    public static Matrix2by2 rotation(double radians) {
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        return new Matrix2by2(cos, -sin, sin, cos);
+    }
+    
     /**
      * Create an identity matrix
      * @return identity matrix
@@ -59,6 +71,26 @@ public class Matrix2by2 {
         return new Matrix2by2(newA, newB, newC, newD);
     }
     
+    /**
+     * @return the determinant ad - bc
+     */
+    public double determinant() {
+        return a * d - b * c;
+    }
+    
+    /**
+     * Get the matrix that undoes this one, so multiplying a vector by this
+     * matrix and then by the inverse gives the vector back
+     * @return inverse matrix
+     */
+    public Matrix2by2 inverse() {
+        double det = determinant();
+        if (det == 0 || Double.isNaN(det)) {
+            throw new ArithmeticException("matrix has no inverse: " + this);
+        }
+        return new Matrix2by2(d / det, -b / det, -c / det, a / det);
+    }
+    
     /**
      * String representation of the matrix
      * @return string representation
@@ -119,6 +151,26 @@ public class Matrix2by2 {
         assert Math.abs(result.getElement2() - (-3.0)) < 0.001 : "Second element should be -3.0";
         System.out.println("✓ Vector-Matrix multiplication works correctly");
         
+        // Test 6: Any angle rotation and inverse
+        Matrix2by2 quarter = Matrix2by2.rotation(Math.PI / 2);
+        System.out.println("Test 6 - rotation(pi/2): " + quarter);
+        assert Math.abs(quarter.getA() - rot90.getA()) < 1e-12 && Math.abs(quarter.getB() - rot90.getB()) < 1e-12
+            && Math.abs(quarter.getC() - rot90.getC()) < 1e-12 && Math.abs(quarter.getD() - rot90.getD()) < 1e-12
+            : "rotation(pi/2) should be rotation90";
+        Matrix2by2 skew = new Matrix2by2(2, 1, 3, 4);
+        Matrix2by2 back = Matrix2by2.multiply(skew, skew.inverse());
+        System.out.println("        " + skew + " * inverse = " + back);
+        assert Math.abs(back.getA() - 1) < 1e-12 && Math.abs(back.getB()) < 1e-12
+            && Math.abs(back.getC()) < 1e-12 && Math.abs(back.getD() - 1) < 1e-12 : "Inverse failed";
+        boolean threw = false;
+        try {
+            new Matrix2by2(1, 2, 2, 4).inverse();
+        } catch (ArithmeticException e) {
+            threw = true;
+        }
+        assert threw : "Singular matrix should have no inverse";
+        System.out.println("✓ Rotation by any angle and inverse work correctly");
+        
         System.out.println("=== All Matrix2by2 tests passed! ===\n");
     }
 }
@@ -0,0 +1,235 @@
+/**
+ * Matrix3by3 class represents a 3x3 homogeneous transformation matrix.
+ * It works like Matrix2by2, with a point (x, y) written as the row vector
+ * [x, y, 1] and multiplied on the left, but the extra row also lets it move
+ * points (translate), so rotating or scaling about any point is one matrix.
+ * Matrix format: [[a, b, c], [d, e, f], [g, h, i]]
+ *
+ * For the usual (affine) transforms the last column is [0, 0, 1], the top
+ * left 2x2 is a Matrix2by2 and [g, h] is the translation.
+ */
+public class Matrix3by3 {
+    private final double a, b, c;
+    private final double d, e, f;
+    private final double g, h, i;
+
+    public Matrix3by3(double a, double b, double c,
+                      double d, double e, double f,
+                      double g, double h, double i) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        this.e = e;
+        this.f = f;
+        this.g = g;
+        this.h = h;
+        this.i = i;
+    }
+
+    /**
+     * Turn a 2x2 matrix into a 3x3 one that does the same and does not move
+     * the origin
+     * @param m the 2x2 matrix
+     */
+    public Matrix3by3(Matrix2by2 m) {
+        this(m.getA(), m.getB(), 0,
+             m.getC(), m.getD(), 0,
+             0, 0, 1);
+    }
+
+    // Getters, by row then column
+    public double getA() { return a; }
+    public double getB() { return b; }
+    public double getC() { return c; }
+    public double getD() { return d; }
+    public double getE() { return e; }
+    public double getF() { return f; }
+    public double getG() { return g; }
+    public double getH() { return h; }
+    public double getI() { return i; }
+
+    public static Matrix3by3 identity() {
+        return new Matrix3by3(1, 0, 0, 0, 1, 0, 0, 0, 1);
+    }
+
+    /**
+     * @param dx how far to move right
+     * @param dy how far to move down
+     * @return translation matrix
+     */
+    public static Matrix3by3 translation(double dx, double dy) {
+        return new Matrix3by3(1, 0, 0, 0, 1, 0, dx, dy, 1);
+    }
+
+    /**
+     * @param sx how much to stretch x
+     * @param sy how much to stretch y (negative sx or sy mirrors)
+     * @return scale matrix
+     */
+    public static Matrix3by3 scale(double sx, double sy) {
+        return new Matrix3by3(sx, 0, 0, 0, sy, 0, 0, 0, 1);
+    }
+
+    /**
+     * @param shx how much x moves for each step in y
+     * @param shy how much y moves for each step in x
+     * @return shear matrix
+     */
+    public static Matrix3by3 shear(double shx, double shy) {
+        return new Matrix3by3(1, shy, 0, shx, 1, 0, 0, 0, 1);
+    }
+
+    /**
+     * @param radians the angle, the same direction as Matrix2by2.rotation
+     * @return rotation matrix about the origin
+     */
+    public static Matrix3by3 rotation(double radians) {
+        return new Matrix3by3(Matrix2by2.rotation(radians));
+    }
+
+    /**
+     * Do a transform about a point instead of the origin, like rotating about
+     * the center of a picture
+     * @param m the transform
+     * @param x the x of the point that stays still
+     * @param y the y of the point that stays still
+     * @return move the point to the origin, transform, move it back
+     */
+    public static Matrix3by3 about(Matrix3by3 m, double x, double y) {
+        return translation(-x, -y).then(m).then(translation(x, y));
+    }
+
+    /**
+     * Multiply two matrices. Transforming by the result is the same as
+     * transforming by m1 and then by m2.
+     * @param m1 first matrix
+     * @param m2 second matrix
+     * @return resulting matrix
+     */
+    public static Matrix3by3 multiply(Matrix3by3 m1, Matrix3by3 m2) {
+        return new Matrix3by3(
+            m1.a * m2.a + m1.b * m2.d + m1.c * m2.g,
+            m1.a * m2.b + m1.b * m2.e + m1.c * m2.h,
+            m1.a * m2.c + m1.b * m2.f + m1.c * m2.i,
+            m1.d * m2.a + m1.e * m2.d + m1.f * m2.g,
+            m1.d * m2.b + m1.e * m2.e + m1.f * m2.h,
+            m1.d * m2.c + m1.e * m2.f + m1.f * m2.i,
+            m1.g * m2.a + m1.h * m2.d + m1.i * m2.g,
+            m1.g * m2.b + m1.h * m2.e + m1.i * m2.h,
+            m1.g * m2.c + m1.h * m2.f + m1.i * m2.i);
+    }
+
+    /**
+     * @param next the transform to do after this one
+     * @return one matrix that does both
+     */
+    public Matrix3by3 then(Matrix3by3 next) {
+        return multiply(this, next);
+    }
+
+    /**
+     * @param next the 2x2 transform to do after this one
+     * @return one matrix that does both
+     */
+    public Matrix3by3 then(Matrix2by2 next) {
+        return multiply(this, new Matrix3by3(next));
+    }
+
+    public double determinant() {
+        return a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+    }
+
+    /**
+     * @return the matrix that undoes this one
+     */
+    public Matrix3by3 inverse() {
+        double det = determinant();
+        if (det == 0 || Double.isNaN(det)) {
+            throw new ArithmeticException("matrix has no inverse: " + this);
+        }
+        return new Matrix3by3(
+            (e * i - f * h) / det, (c * h - b * i) / det, (b * f - c * e) / det,
+            (f * g - d * i) / det, (a * i - c * g) / det, (c * d - a * f) / det,
+            (d * h - e * g) / det, (b * g - a * h) / det, (a * e - b * d) / det);
+    }
+
+    /**
+     * @return true if straight lines stay parallel (the last column is [0, 0, 1])
+     */
+    public boolean isAffine() {
+        return c == 0 && f == 0 && i == 1;
+    }
+
+    /**
+     * @return the 2x2 part without the translation
+     */
+    public Matrix2by2 getLinear() {
+        return new Matrix2by2(a, b, d, e);
+    }
+
+    /**
+     * Transform a point
+     * @param v the point (x, y)
+     * @return the transformed point
+     */
+    public Vector1by2 transform(Vector1by2 v) {
+        double x = v.getElement1();
+        double y = v.getElement2();
+        double w = x * c + y * f + i;
+        return new Vector1by2((x * a + y * d + g) / w, (x * b + y * e + h) / w);
+    }
+
+    @Override
+    public String toString() {
+        return "[[" + a + ", " + b + ", " + c + "], [" + d + ", " + e + ", " + f + "], ["
+               + g + ", " + h + ", " + i + "]]";
+    }
+
+    /**
+     * Unit tests for Matrix3by3 class
+     */
+    public static void runUnitTests() {
+        System.out.println("=== Matrix3by3 Unit Tests ===");
+
+        // Test 1: translation, scale and shear move a point the right way
+        Vector1by2 p = new Vector1by2(3, 4);
+        Vector1by2 moved = translation(10, -2).transform(p);
+        Vector1by2 scaled = scale(2, -1).transform(p);
+        Vector1by2 sheared = shear(0.5, 0).transform(p);
+        System.out.println("Test 1 - " + p + " translated " + moved + ", scaled " + scaled + ", sheared " + sheared);
+        assert close(moved, 13, 2) : "Translation failed";
+        assert close(scaled, 6, -4) : "Scale failed";
+        assert close(sheared, 5, 4) : "Shear failed";
+        System.out.println("✓ Basic transforms work correctly");
+
+        // Test 2: a 3x3 rotation does the same as the 2x2 one
+        Vector1by2 byMatrix2 = Vector1by2.multiply(p, Matrix2by2.rotation90());
+        Vector1by2 byMatrix3 = new Matrix3by3(Matrix2by2.rotation90()).transform(p);
+        System.out.println("Test 2 - Rotate 90: " + byMatrix3);
+        assert close(byMatrix3, byMatrix2.getElement1(), byMatrix2.getElement2()) : "2x2 and 3x3 differ";
+        System.out.println("✓ Works the same as Matrix2by2");
+
+        // Test 3: rotating about a point keeps that point still
+        Matrix3by3 spin = about(rotation(0.7), 3, 4);
+        System.out.println("Test 3 - Rotate about " + p + ": " + spin.transform(p));
+        assert close(spin.transform(p), 3, 4) : "Center should not move";
+        System.out.println("✓ Transform about a point works correctly");
+
+        // Test 4: multiply runs the first matrix first, and inverse undoes it
+        Matrix3by3 chain = scale(2, 3).then(translation(1, 1)).then(shear(0.25, 0.5));
+        Vector1by2 forward = chain.transform(p);
+        Vector1by2 expected = shear(0.25, 0.5).transform(translation(1, 1).transform(scale(2, 3).transform(p)));
+        assert close(forward, expected.getElement1(), expected.getElement2()) : "Multiply order is wrong";
+        Vector1by2 back = chain.inverse().transform(forward);
+        System.out.println("Test 4 - Chain " + forward + ", inverse back to " + back);
+        assert close(back, 3, 4) : "Inverse failed";
+        System.out.println("✓ Multiply and inverse work correctly");
+
+        System.out.println("=== All Matrix3by3 tests passed! ===\n");
+    }
+
+    private static boolean close(Vector1by2 v, double x, double y) {
+        return Math.abs(v.getElement1() - x) < 1e-9 && Math.abs(v.getElement2() - y) < 1e-9;
+    }
+}
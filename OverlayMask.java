@@ -0,0 +1,476 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OverlayMask is an overlay picture worked out once for putting on top of
+ * other pictures. Near-white overlay pixels (all three values at or above
+ * 250) are background and are left out so the picture underneath shows
+ * through; every other pixel is copied.
+ *
+ * The near-white test is done once, when the mask is made, and kept as a
+ * coverage value per pixel: 0 for background, 255 for a pixel that is
+ * copied. The runs of covered pixels in each row are listed as well, as
+ * [start, end) columns, so putting the overlay on a picture copies each run
+ * in one go and never looks at the background between them. Overlays like
+ * the ones in lib2 are mostly white around a compact subject, so most of
+ * their pixels are skipped without being read. The counts of copied,
+ * blended and skipped pixels are kept for checking how much that saves.
+ *
+ * With feathering, covered pixels near the background get a coverage in
+ * between, the share of covered pixels around them, and are blended with
+ * the picture underneath so the edge of the overlay is soft.
+ *
+ * The overlay's colors are copied when the mask is made, so changing the
+ * overlay afterwards does not change the mask.
+ */
+public class OverlayMask {
+    // overlay pixels with all three values at or above this are treated as background
+    private static final int WHITE_THRESHOLD = 250;
+
+    // how many masks kept() holds on to
+    private static final int KEPT_COUNT = 16;
+
+    // the most recently used masks by name, least recently used first
+    private static final Map<String, OverlayMask> KEPT = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int width, height;
+    private final int feather;
+    private final int[] pixels;
+    private final byte[] coverage;
+
+    // the runs of row y are spans[2 * i] to spans[2 * i + 1] for i from
+    // rowSpans[y] up to rowSpans[y + 1]; blends[i] is true for a run of
+    // partly covered pixels
+    private final int[] rowSpans;
+    private int[] spans;
+    private boolean[] blends;
+
+    private final LongAdder copied = new LongAdder();
+    private final LongAdder blended = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    private OverlayMask(Picture overlay, int feather) {
+        this.width = overlay.getWidth();
+        this.height = overlay.getHeight();
+        this.feather = feather;
+        this.pixels = overlay.getRegion(0, 0, width, height, null, 0, width);
+        this.coverage = new byte[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            if (!isBackground(pixels[i])) {
+                coverage[i] = (byte) 255;
+            }
+        }
+        if (feather > 0) {
+            soften();
+        }
+        this.rowSpans = new int[height + 1];
+        findSpans();
+    }
+
+    /**
+     * Make the mask of an overlay with hard edges
+     * @param overlay the overlay picture
+     * @return the mask
+     */
+    public static OverlayMask of(Picture overlay) {
+        return of(overlay, 0);
+    }
+
+    /**
+     * Make the mask of an overlay
+     * @param overlay the overlay picture
+     * @param feather how many pixels in from the edge of the covered part
+     *                are blended with the picture underneath; 0 for hard edges
+     * @return the mask
+     */
+    public static OverlayMask of(Picture overlay, int feather) {
+        if (feather < 0) {
+            throw new IllegalArgumentException("feather must not be negative but was " + feather);
+        }
+        return new OverlayMask(overlay, feather);
+    }
+
+    /**
+     * Get the hard edged mask of an overlay by a name for its pixels, like a
+     * ResultCache recipe key. The mask is made the first time the name is
+     * asked for, and the overlay is only got then. The last 16 masks are kept.
+     * @param name names the overlay's pixels; changes when they do
+     * @param overlay gets the overlay picture if the mask is not kept
+     * @return the mask
+     */
+    public static OverlayMask kept(String name, Supplier<Picture> overlay) {
+        synchronized (KEPT) {
+            OverlayMask mask = KEPT.get(name);
+            if (mask != null) {
+                return mask;
+            }
+        }
+        // made without holding the lock so other masks can be got meanwhile
+        OverlayMask mask = of(overlay.get());
+        synchronized (KEPT) {
+            KEPT.put(name, mask);
+            Iterator<OverlayMask> oldestFirst = KEPT.values().iterator();
+            while (KEPT.size() > KEPT_COUNT) {
+                oldestFirst.next();
+                oldestFirst.remove();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param p a packed pixel value
+     * @return true if the pixel is near-white, so it is left out
+     */
+    public static boolean isBackground(int p) {
+        return ((p >> 16) & 0xff) >= WHITE_THRESHOLD
+            && ((p >> 8) & 0xff) >= WHITE_THRESHOLD
+            && (p & 0xff) >= WHITE_THRESHOLD;
+    }
+
+    // covered pixels get the share of covered pixels in the square around them
+    private void soften() {
+        // covered pixels in the rectangle from (0, 0) up to but not including (x, y)
+        int stride = width + 1;
+        int[] sums = new int[stride * (height + 1)];
+        for (int y = 0; y < height; y++) {
+            int rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                rowSum += coverage[y * width + x] != 0 ? 1 : 0;
+                sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + rowSum;
+            }
+        }
+
+        // pixels outside the overlay count as background
+        int area = (2 * feather + 1) * (2 * feather + 1);
+        for (int y = 0; y < height; y++) {
+            int top = Math.max(y - feather, 0);
+            int bottom = Math.min(y + feather + 1, height);
+            for (int x = 0; x < width; x++) {
+                if (coverage[y * width + x] == 0) {
+                    continue;
+                }
+                int left = Math.max(x - feather, 0);
+                int right = Math.min(x + feather + 1, width);
+                int count = sums[bottom * stride + right] - sums[top * stride + right]
+                            - sums[bottom * stride + left] + sums[top * stride + left];
+                coverage[y * width + x] = (byte) ((count * 255 + area / 2) / area);
+            }
+        }
+    }
+
+    // list each row's runs of fully covered and of partly covered pixels
+    private void findSpans() {
+        spans = new int[16];
+        blends = new boolean[8];
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            rowSpans[y] = count;
+            int x = 0;
+            while (x < width) {
+                int c = coverage[y * width + x] & 0xff;
+                if (c == 0) {
+                    x++;
+                    continue;
+                }
+                boolean blend = c != 255;
+                int start = x;
+                while (x < width && coverage[y * width + x] != 0
+                       && (coverage[y * width + x] != (byte) 255) == blend) {
+                    x++;
+                }
+                if (count == blends.length) {
+                    spans = Arrays.copyOf(spans, 4 * count);
+                    blends = Arrays.copyOf(blends, 2 * count);
+                }
+                spans[2 * count] = start;
+                spans[2 * count + 1] = x;
+                blends[count] = blend;
+                count++;
+            }
+        }
+        rowSpans[height] = count;
+        spans = Arrays.copyOf(spans, 2 * count);
+        blends = Arrays.copyOf(blends, count);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFeather() {
+        return feather;
+    }
+
+    /**
+     * @param x the column in the overlay
+     * @param y the row in the overlay
+     * @return 0 if the pixel is left out, 255 if it is copied, or in between if it is blended
+     */
+    public int getCoverage(int x, int y) {
+        return coverage[y * width + x] & 0xff;
+    }
+
+    /**
+     * @param y the row in the overlay
+     * @return the runs of covered pixels in the row, as start and end
+     *         (not included) columns one after the other
+     */
+    public int[] getSpans(int y) {
+        return Arrays.copyOfRange(spans, 2 * rowSpans[y], 2 * rowSpans[y + 1]);
+    }
+
+    // the runs of row y are numbered from spanFrom(y) up to spanTo(y)
+    int spanFrom(int y) {
+        return rowSpans[y];
+    }
+
+    int spanTo(int y) {
+        return rowSpans[y + 1];
+    }
+
+    int spanStart(int i) {
+        return spans[2 * i];
+    }
+
+    int spanEnd(int i) {
+        return spans[2 * i + 1];
+    }
+
+    // true if run i is partly covered pixels, false if it is fully covered ones
+    boolean isBlendSpan(int i) {
+        return blends[i];
+    }
+
+    /**
+     * @return how many runs of covered pixels there are in all
+     */
+    public int getSpanCount() {
+        return rowSpans[height];
+    }
+
+    /**
+     * @return how many overlay pixels have been copied onto pictures
+     */
+    public long getCopiedPixels() {
+        return copied.sum();
+    }
+
+    /**
+     * @return how many overlay pixels have been blended onto pictures at feathered edges
+     */
+    public long getBlendedPixels() {
+        return blended.sum();
+    }
+
+    /**
+     * @return how many background overlay pixels have been skipped without being read
+     */
+    public long getSkippedPixels() {
+        return skipped.sum();
+    }
+
+    /**
+     * Put the overlay on a copy of a picture
+     * @param background the picture underneath, not changed
+     * @param startRow the row of the picture where the overlay's top goes
+     * @param startCol the column of the picture where the overlay's left goes
+     * @return a new picture
+     */
+    public Picture insert(Picture background, int startRow, int startCol) {
+        Picture result = new Picture(background);
+        drawOnto(result, startRow, startCol);
+        return result;
+    }
+
+    /**
+     * Put the overlay on a picture. Parts of the overlay outside the picture
+     * are left out. Copied pixels keep the picture's alpha.
+     * @param target the picture to change
+     * @param startRow the row of the picture where the overlay's top goes
+     * @param startCol the column of the picture where the overlay's left goes
+     */
+    public void drawOnto(Picture target, int startRow, int startCol) {
+        int fromRow = Math.max(startRow, 0);
+        int toRow = Math.min(startRow + height, target.getHeight());
+        int fromCol = Math.max(startCol, 0);
+        int toCol = Math.min(startCol + width, target.getWidth());
+        if (fromRow >= toRow || fromCol >= toCol) {
+            return;
+        }
+        int[] data = target.getPixelData();
+        int targetWidth = target.getWidth();
+        // without alpha in the picture, the alpha byte of the data is ignored
+        boolean keepAlpha = target.hasAlpha();
+
+        RowBandExecutor.forEachBand(toCol - fromCol, toRow - fromRow, (fromBand, toBand) -> {
+            long copiedHere = 0, blendedHere = 0;
+            for (int row = fromRow + fromBand; row < fromRow + toBand; row++) {
+                // where overlay column 0 of this row goes in the data
+                int to = row * targetWidth + startCol;
+                int y = row - startRow;
+                for (int i = rowSpans[y]; i < rowSpans[y + 1]; i++) {
+                    int start = Math.max(spans[2 * i], fromCol - startCol);
+                    int end = Math.min(spans[2 * i + 1], toCol - startCol);
+                    if (start >= end) {
+                        continue;
+                    }
+                    if (blends[i]) {
+                        blendRun(y * width, start, end, data, to);
+                        blendedHere += end - start;
+                    } else {
+                        copyRun(y * width, start, end, data, to, keepAlpha);
+                        copiedHere += end - start;
+                    }
+                }
+            }
+            copied.add(copiedHere);
+            blended.add(blendedHere);
+            skipped.add((long) (toBand - fromBand) * (toCol - fromCol) - copiedHere - blendedHere);
+        });
+    }
+
+    // copy columns start to end of the row starting at index from
+    private void copyRun(int from, int start, int end, int[] data, int to, boolean keepAlpha) {
+        if (keepAlpha) {
+            for (int x = start; x < end; x++) {
+                data[to + x] = (data[to + x] & 0xff000000) | (pixels[from + x] & 0x00ffffff);
+            }
+        } else {
+            System.arraycopy(pixels, from + start, data, to + start, end - start);
+        }
+    }
+
+    // blend columns start to end of the row starting at index from by their coverage
+    private void blendRun(int from, int start, int end, int[] data, int to) {
+        for (int x = start; x < end; x++) {
+            data[to + x] = blend(data[to + x], pixels[from + x], coverage[from + x] & 0xff);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OverlayMask[" + width + "x" + height + ", " + getSpanCount() + " runs, "
+               + getCopiedPixels() + " copied, " + getBlendedPixels() + " blended, "
+               + getSkippedPixels() + " skipped]";
+    }
+
+    // the overlay color over the picture's by coverage out of 255, keeping the picture's alpha
+    private static int blend(int under, int over, int c) {
+        int result = under & 0xff000000;
+        for (int shift = 0; shift < 24; shift += 8) {
+            int u = (under >> shift) & 0xff;
+            int o = (over >> shift) & 0xff;
+            result |= ((o * c + u * (255 - c) + 127) / 255) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * Unit tests for OverlayMask
+     */
+    public static void runUnitTests() {
+        System.out.println("=== OverlayMask Unit Tests ===");
+
+        // a blue background, and an overlay with a white border around a colored middle
+        Picture background = new Picture(12, 14);
+        background.forEachPixel((x, y, p) -> 0xff000000 | (x * 10 << 8) | 200);
+        Picture overlay = new Picture(6, 7);
+        overlay.forEachPixel((x, y, p) -> x == 0 || y == 0 || x == 6 || y == 5
+                             ? 0xff000000 | (250 + x % 3) << 16 | 252 << 8 | 255
+                             : 0xff000000 | (x * 30 << 16) | (y * 40 << 8) | 249);
+
+        // Test 1: the mask covers exactly the pixels that are not near-white
+        OverlayMask mask = OverlayMask.of(overlay);
+        System.out.println("Test 1 - Coverage of corner and middle: " + mask.getCoverage(0, 0)
+                           + ", " + mask.getCoverage(3, 2));
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 7; x++) {
+                boolean copied = mask.getCoverage(x, y) == 255;
+                assert copied == !isBackground(overlay.getBasicPixel(x, y)) : "Coverage is wrong at " + x + "," + y;
+            }
+        }
+        System.out.println("✓ Coverage works correctly");
+
+        // Test 2: inserting copies covered pixels and leaves the rest
+        Picture result = mask.insert(background, 3, 4);
+        for (int y = 0; y < 12; y++) {
+            for (int x = 0; x < 14; x++) {
+                int ox = x - 4, oy = y - 3;
+                boolean inside = ox >= 0 && ox < 7 && oy >= 0 && oy < 6;
+                int expected = inside && mask.getCoverage(ox, oy) == 255 ? overlay.getBasicPixel(ox, oy)
+                               : background.getBasicPixel(x, y);
+                assert result.getBasicPixel(x, y) == expected : "Insert is wrong at " + x + "," + y;
+            }
+        }
+        System.out.println("Test 2 - Insert at (3,4): (7,5) -> " + Integer.toHexString(result.getBasicPixel(7, 5)));
+        System.out.println("✓ Insert works correctly");
+
+        // Test 3: parts outside the picture are left out, and alpha is kept
+        Picture clear = new Picture(new java.awt.image.BufferedImage(5, 5, java.awt.image.BufferedImage.TYPE_INT_ARGB));
+        mask.drawOnto(clear, -2, -3);
+        System.out.println("Test 3 - Drawn at (-2,-3): (0,0) -> " + Integer.toHexString(clear.getBasicPixel(0, 0)));
+        assert clear.getBasicPixel(0, 0) == (overlay.getBasicPixel(3, 2) & 0x00ffffff) : "Clipped draw is wrong";
+        assert clear.getBasicPixel(4, 4) == 0 : "Pixels past the overlay should not change";
+        Picture offside = mask.insert(background, 20, 0);
+        assert Picture.isSame(offside, background) : "An overlay off the picture should change nothing";
+        System.out.println("✓ Clipping works correctly");
+
+        // Test 4: feathered edges are blended, the middle is still copied
+        OverlayMask soft = OverlayMask.of(overlay, 1);
+        System.out.println("Test 4 - Feathered coverage of edge and middle: " + soft.getCoverage(1, 1)
+                           + ", " + soft.getCoverage(3, 2));
+        assert soft.getCoverage(0, 0) == 0 : "Background should stay uncovered";
+        assert soft.getCoverage(1, 1) == (4 * 255 + 4) / 9 : "Corner of the covered part should be 4/9";
+        assert soft.getCoverage(3, 2) == 255 : "Middle should stay covered";
+        Picture blended = soft.insert(background, 0, 0);
+        int under = background.getBasicPixel(1, 1), over = overlay.getBasicPixel(1, 1);
+        int c = soft.getCoverage(1, 1);
+        int green = ((over >> 8 & 0xff) * c + (under >> 8 & 0xff) * (255 - c) + 127) / 255;
+        assert (blended.getBasicPixel(1, 1) >> 8 & 0xff) == green : "Edge should be blended";
+        assert blended.getBasicPixel(3, 2) == overlay.getBasicPixel(3, 2) : "Middle should be copied";
+        System.out.println("✓ Feathering works correctly");
+
+        // Test 5: kept masks are made once per name, even from a new copy each time
+        int[] gets = new int[1];
+        Supplier<Picture> copies = () -> {
+            gets[0]++;
+            return new Picture(overlay);
+        };
+        OverlayMask first = kept("test overlay", copies);
+        assert kept("test overlay", copies) == first && gets[0] == 1 : "Kept mask should be reused";
+        assert kept("other overlay", copies) != first : "Another name should get its own mask";
+        for (int i = 0; i < KEPT_COUNT; i++) {
+            kept("overlay " + i, copies);
+        }
+        assert kept("test overlay", copies) != first : "Old masks should be let go";
+        System.out.println("Test 5 - Kept mask reused");
+        System.out.println("✓ Kept masks work correctly");
+
+        // Test 6: each row lists its runs, and only the runs are copied
+        Picture stripes = new Picture(3, 10);
+        stripes.forEachPixel((x, y, p) -> y == 1 || x == 3 || x == 4 || x == 8 ? 0xff102030 : 0xffffffff);
+        OverlayMask striped = OverlayMask.of(stripes);
+        System.out.println("Test 6 - Runs of rows 0 and 1: " + Arrays.toString(striped.getSpans(0))
+                           + ", " + Arrays.toString(striped.getSpans(1)));
+        assert Arrays.equals(striped.getSpans(0), new int[] {3, 5, 8, 9}) : "Row 0 runs are wrong";
+        assert Arrays.equals(striped.getSpans(1), new int[] {0, 10}) : "Row 1 runs are wrong";
+        assert striped.getSpanCount() == 5 : "Run count is wrong";
+        striped.insert(background, 0, 6);
+        System.out.println("  Drawn with 8 columns showing: " + striped);
+        assert striped.getCopiedPixels() == 2 + 8 + 2 && striped.getSkippedPixels() == 24 - 12
+            : "Copied and skipped counts are wrong";
+        assert soft.getBlendedPixels() > 0 && mask.getBlendedPixels() == 0 : "Only feathered masks blend";
+        System.out.println("✓ Runs work correctly");
+
+        System.out.println("=== All OverlayMask tests passed! ===\n");
+    }
+}
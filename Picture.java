@@ -89,14 +89,7 @@ public class Picture extends SimplePicture
   /** Method to set the blue to 0 */
   public void zeroBlue()
   {
-    Pixel[][] pixels = this.getPixels2D();
-    for (Pixel[] rowArray : pixels)
-    {
-      for (Pixel pixelObj : rowArray)
-      {
-        pixelObj.setBlue(0);
-      }
-    }
+    this.forEachPixel((x, y, value) -> value & 0xffffff00);
   }
  
   /** Method that mirrors the picture around a
@@ -152,25 +145,11 @@ public class Picture extends SimplePicture
   public void copy(Picture fromPic,
                  int startRow, int startCol)
   {
-    Pixel fromPixel = null;
-    Pixel toPixel = null;
-    Pixel[][] toPixels = this.getPixels2D();
-    Pixel[][] fromPixels = fromPic.getPixels2D();
-    for (int fromRow = 0, toRow = startRow;
-         fromRow < fromPixels.length &&
-         toRow < toPixels.length;
-         fromRow++, toRow++)
-    {
-      for (int fromCol = 0, toCol = startCol;
-           fromCol < fromPixels[0].length &&
-           toCol < toPixels[0].length;  
-           fromCol++, toCol++)
-      {
-        fromPixel = fromPixels[fromRow][fromCol];
-        toPixel = toPixels[toRow][toCol];
-        toPixel.setColor(fromPixel.getColor());
-      }
-    }  
+    // copy whole rows at a time, clipped to fit in this picture
+    int rows = Math.min(fromPic.getHeight(), this.getHeight() - startRow);
+    int cols = Math.min(fromPic.getWidth(), this.getWidth() - startCol);
+    if (rows > 0 && cols > 0)
+      this.copyPixels(fromPic, 0, 0, startCol, startRow, cols, rows);
   }
 
 
@@ -223,33 +202,7 @@ public class Picture extends SimplePicture
    */
   public void hide(Picture secret)
   {
-    Pixel leftPixel = null;
-    Pixel secretPixel = null;
-    Pixel[][] pixels = this.getPixels2D();
-    Pixel[][] pixelsSecret = secret.getPixels2D();
-    Color leftColor = null;
-    Color secretColor = null;
-    int width = pixelsSecret[0].length;
-    int height = pixelsSecret.length;
-   
-    for (int row = 0, srow=0; row < pixels.length && srow < height;row++,srow++)
-    {
-      for (int col = 0, scol=0;
-           col < pixels[0].length-1 && scol < width; col++, scol++)
-      {
-        leftPixel = pixels[row][col];  
-        secretPixel = pixelsSecret[srow][scol];
-        leftColor = leftPixel.getColor();
-        secretColor = secretPixel.getColor();
-     
-        leftPixel.setColor(new Color(LOW_FILTER*(leftColor.getRed()/LOW_FILTER) +
-                                     secretColor.getRed()/HIGH_FILTER,
-               LOW_FILTER*(leftColor.getGreen()/LOW_FILTER) + secretColor.getGreen()/HIGH_FILTER,
-               LOW_FILTER*(leftColor.getBlue()/LOW_FILTER) + secretColor.getBlue()/HIGH_FILTER));
-       
-       }
-   
-    }
+    hide(secret, 0, 0);
   }
  
   /**
@@ -257,31 +210,23 @@ public class Picture extends SimplePicture
    */
   public void hide(Picture secret, int startX, int startY)
   {
-    Pixel leftPixel = null;
-    Pixel secretPixel = null;
-    Pixel[][] pixels = this.getPixels2D();
-    Pixel[][] pixelsSecret = secret.getPixels2D();
-    Color leftColor = null;
-    Color secretColor = null;
-    int width = pixelsSecret[0].length;
-    int height = pixelsSecret.length;
+    int height = secret.getHeight();
+    // the last column is left alone like the other steganography methods
+    int cols = Math.min(this.getWidth() - 1 - startX, secret.getWidth());
+    if (cols <= 0)
+      return;
+    int[] coverRow = new int[cols];
+    int[] secretRow = new int[cols];
+    PixelKernels kernels = PixelKernels.get();
    
-    for (int row = startY, srow=0; row < pixels.length && srow < height;row++,srow++)
+    // keep the top 6 bits of each cover color and put the top 2 bits
+    // of the secret color below them, a whole row at a time
+    for (int row = startY, srow=0; row < this.getHeight() && srow < height;row++,srow++)
     {
-      for (int col = startX, scol=0;
-           col < pixels[0].length-1 && scol < width; col++, scol++)
-      {
-        leftPixel = pixels[row][col];  
-        secretPixel = pixelsSecret[srow][scol];
-        leftColor = leftPixel.getColor();
-        secretColor = secretPixel.getColor();
-     
-        leftPixel.setColor(new Color(LOW_FILTER*(leftColor.getRed()/LOW_FILTER) +
-                                     secretColor.getRed()/HIGH_FILTER,
-               LOW_FILTER*(leftColor.getGreen()/LOW_FILTER) + secretColor.getGreen()/HIGH_FILTER,
-               LOW_FILTER*(leftColor.getBlue()/LOW_FILTER) + secretColor.getBlue()/HIGH_FILTER));
-      }
-   
+      this.getRegion(startX, row, cols, 1, coverRow, 0, cols);
+      secret.getRegion(0, srow, cols, 1, secretRow, 0, cols);
+      kernels.hide(coverRow, 0, secretRow, 0, cols);
+      this.setRegion(startX, row, cols, 1, coverRow, 0, cols);
     }
   }
 
@@ -292,55 +237,15 @@ public class Picture extends SimplePicture
  */
   public void unhide()
   {
-    Pixel leftPixel = null;
-    Pixel[][] pixels = this.getPixels2D();
-   
-    Color leftColor = null;
-   
-    for (int row = 0; row < pixels.length;
-        row++)
-    {
-      for (int col = 0;
-           col < pixels[0].length-1; col++)
-      {
-        leftPixel = pixels[row][col];  
-       
-        leftColor = leftPixel.getColor();
-     
-        leftPixel.setColor(new Color(HIGH_FILTER*(leftColor.getRed()%LOW_FILTER),
-               HIGH_FILTER*(leftColor.getGreen()%LOW_FILTER),
-               HIGH_FILTER*(leftColor.getBlue()%LOW_FILTER)));
-       
-    }
-   
+    applyToAllButLastColumn(revealTable());
   }
-}
 
 
 /**
  * Clear the lower two bits in all pixels
  */
 public void clearLow(){
-    Pixel leftPixel = null;
-   
-    Pixel[][] pixels = this.getPixels2D();
-   
-    Color leftColor = null;
-   
-    for (int row = 0; row < pixels.length; row++)
-    {
-      for (int col = 0;  col < pixels[0].length-1; col++)
-      {
-        leftPixel = pixels[row][col];  
-        leftColor = leftPixel.getColor();
-     
-        leftPixel.setColor(new Color(LOW_FILTER*(leftColor.getRed()/LOW_FILTER),
-            LOW_FILTER*(leftColor.getGreen()/LOW_FILTER),
-            LOW_FILTER*(leftColor.getBlue()/LOW_FILTER)));
-       
-       }
-   
-    }
+    applyToAllButLastColumn(ColorOp.clearLow());
 }
 
 
@@ -348,29 +253,11 @@ public void clearLow(){
  * Set the lower two bits in all pixels
  */
 public void setLow(Color c){
-    // first clear the lowest two bits in all pixels in the picture
-    clearLow();
-   
-    Pixel leftPixel = null;
-   
-    Pixel[][] pixels = this.getPixels2D();
-   
-    Color leftColor = null;
-   
-    for (int row = 0; row < pixels.length; row++)
-    {
-      for (int col = 0;  col < pixels[0].length-1; col++)
-      {
-        leftPixel = pixels[row][col];  
-        leftColor = leftPixel.getColor();
-     
-        leftPixel.setColor(new Color(leftColor.getRed() + c.getRed() % LOW_FILTER,
-            leftColor.getGreen() + c.getGreen() % LOW_FILTER,
-            leftColor.getBlue() + c.getBlue() % LOW_FILTER));
-       
-       }
-   
-    }
+    // clear the lowest two bits then add the low bits of the color, as one table
+    applyToAllButLastColumn(ChannelLut.perChannel(
+        red -> LOW_FILTER*(red/LOW_FILTER) + c.getRed() % LOW_FILTER,
+        green -> LOW_FILTER*(green/LOW_FILTER) + c.getGreen() % LOW_FILTER,
+        blue -> LOW_FILTER*(blue/LOW_FILTER) + c.getBlue() % LOW_FILTER));
 }
 
 
@@ -378,51 +265,58 @@ public void setLow(Color c){
  * Sets the highest two bits of each pixel's colors to the lowest two bits of each pixel's colors
  */
 public void reveal(){
-    Pixel leftPixel = null;
-   
-    Pixel[][] pixels = this.getPixels2D();
-   
-    Color leftColor = null;
-   
-   
-    for (int row = 0; row < pixels.length;row++)
+    applyToAllButLastColumn(revealTable());
+}
+
+
+/**
+ * Table that moves the lowest two bits of each color up to the highest two bits
+ */
+private ChannelLut revealTable()
+{
+    return ChannelLut.perChannel(value -> HIGH_FILTER * (value % LOW_FILTER));
+}
+
+
+/**
+ * Runs a color effect on every pixel except the last column, which the
+ * steganography methods have always left alone
+ */
+private void applyToAllButLastColumn(ColorOp effect)
+{
+    int cols = this.getWidth() - 1;
+    if (cols <= 0)
+      return;
+    int[] rowValues = new int[cols];
+    for (int row = 0; row < this.getHeight(); row++)
     {
-      for (int col = 0; col < pixels[0].length-1; col++)
-      {
-        leftPixel = pixels[row][col];  
-       
-        leftColor = leftPixel.getColor();
-     
-        leftPixel.setColor(new Color(HIGH_FILTER * (leftColor.getRed() % LOW_FILTER),
-               HIGH_FILTER * (leftColor.getGreen() % LOW_FILTER),
-               HIGH_FILTER * (leftColor.getBlue() % LOW_FILTER)));
-       
+      this.getRegion(0, row, cols, 1, rowValues, 0, cols);
+      effect.applyAll(rowValues, 0, cols);
+      this.setRegion(0, row, cols, 1, rowValues, 0, cols);
     }
-   
-  }
 }
 
 
+  /**
+   * Start a stack of layers with this picture at the bottom (see LayerStack)
+   * @return a new stack with no layers yet
+   */
+  public LayerStack layers()
+  {
+    return new LayerStack(this);
+  }
+
+
 public static boolean isSame(Picture pic1, Picture pic2)
 {
-   Pixel[][] pixels = pic1.getPixels2D();
-   Pixel[][] otherPixels = pic2.getPixels2D();
-   Pixel pixel = null;
-   Pixel otherPixel = null;
-   
    if(pic1.getWidth() != pic2.getWidth() || pic1.getHeight() != pic2.getHeight())
       return false;
-   for (int row = 0; row < pixels.length;row++)
+   for (int row = 0; row < pic1.getHeight();row++)
     {
-      for (int col = 0; col < pixels[0].length; col++)
+      for (int col = 0; col < pic1.getWidth(); col++)
       {
-        pixel = pixels[row][col];
-        otherPixel = otherPixels[row][col];
-        //if (!leftPixel.getColor().equals(otherPixel.getColor()))
-          // return false;
-        if(pixel.getRed() != otherPixel.getRed() ||
-           pixel.getGreen() != otherPixel.getGreen() ||
-           pixel.getBlue() != otherPixel.getBlue())
+        // compare just the red, green, and blue
+        if(((pic1.getBasicPixel(col, row) ^ pic2.getBasicPixel(col, row)) & 0x00ffffff) != 0)
            return false;
       }
     }
@@ -434,26 +328,15 @@ public static boolean isSame(Picture pic1, Picture pic2)
 public static ArrayList<Point> findDifferences(Picture pic1, Picture pic2)
 {
    ArrayList<Point> list = new ArrayList<Point>();
-   Pixel[][] pixels = pic1.getPixels2D();
-   Pixel[][] otherPixels = pic2.getPixels2D();
-   Pixel pixel = null;
-   Pixel otherPixel = null;
    
    if(pic1.getWidth() !=pic2.getWidth() || pic1.getHeight() != pic2.getHeight())
       return list;
-   for (int row = 0; row < pixels.length;row++)
+   for (int row = 0; row < pic1.getHeight();row++)
    {
-      for (int col = 0; col < pixels[0].length; col++)
+      for (int col = 0; col < pic1.getWidth(); col++)
       {
-        pixel = pixels[row][col];
-        otherPixel = otherPixels[row][col];
-       
-        //if (!pixel.getColor().equals(otherPixel.getColor()))
-          // list.add(new Point(row, col);
-         
-        if(pixel.getRed() != otherPixel.getRed()
-             || pixel.getGreen() != otherPixel.getGreen()
-               || pixel.getBlue() != otherPixel.getBlue())
+        // compare just the red, green, and blue
+        if(((pic1.getBasicPixel(col, row) ^ pic2.getBasicPixel(col, row)) & 0x00ffffff) != 0)
         {
            list.add(new Point(row, col));
         }
@@ -0,0 +1,377 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PictureCache keeps decoded pictures in memory so opening the same file
+ * again does not decode it again.
+ *
+ * Entries are found by the file's canonical path and only used if the file's
+ * last modified time and size still match, so an edited file is decoded
+ * again. The cache holds at most a budget of bytes (4 per pixel) and drops
+ * the least recently used pictures to stay under it.
+ *
+ * Each get() hands out a new copy of the cached picture, so a caller that
+ * changes its picture cannot change what later callers get. A copy is one
+ * array copy, much cheaper than decoding a JPEG.
+ *
+ * A small proxy of a big file can be decoded by reading only every nth pixel
+ * of every nth row (see getSubsampling), which is much faster than decoding
+ * everything and shrinking it. Proxies are cached separately.
+ *
+ * There is one shared cache for the program; its budget in megabytes can be
+ * set with -Dimageapp.cache.mb=... (default 256) or setBudget().
+ */
+public class PictureCache {
+    private static final PictureCache SHARED =
+        new PictureCache(Long.getLong("imageapp.cache.mb", 256) * 1024 * 1024);
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long budget;
+    private long bytes;
+    private long hits, misses, evictions;
+
+    private static class Entry {
+        final long lastModified, size;
+        final Picture picture;
+
+        Entry(long lastModified, long size, Picture picture) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.picture = picture;
+        }
+
+        long bytes() {
+            return 4L * picture.getWidth() * picture.getHeight();
+        }
+    }
+
+    /**
+     * @param budget the most bytes of pixels to keep
+     */
+    public PictureCache(long budget) {
+        setBudget(budget);
+    }
+
+    /**
+     * @return the cache shared by the whole program
+     */
+    public static PictureCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Get a picture, decoding the file only if it is not cached
+     * @param fileName the file, found the same way as new Picture(fileName)
+     * @return a new picture the caller can change; if the file cannot be
+     *         read, the same error picture as new Picture(fileName)
+     */
+    public Picture get(String fileName) {
+        return get(fileName, 1);
+    }
+
+    /**
+     * Get a picture decoded from every nth pixel of every nth row
+     * @param fileName the file, found the same way as new Picture(fileName)
+     * @param subsampling n; 1 decodes every pixel
+     * @return a new picture the caller can change; if the file cannot be
+     *         read, the same error picture as new Picture(fileName)
+     */
+    public Picture get(String fileName, int subsampling) {
+        if (subsampling < 1) {
+            throw new IllegalArgumentException("subsampling must be at least 1 but was " + subsampling);
+        }
+        File file = find(fileName);
+        String key = canonicalPath(file);
+        if (key == null) {
+            return new Picture(fileName);
+        }
+        if (subsampling > 1) {
+            key += " every " + subsampling;
+        }
+        long lastModified = file.lastModified();
+        long size = file.length();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified && entry.size == size) {
+                hits++;
+                return copy(entry.picture, fileName);
+            }
+            misses++;
+        }
+
+        // decode without holding the lock so other files can be read meanwhile
+        Picture picture;
+        try {
+            if (subsampling == 1) {
+                picture = new Picture();
+                picture.loadOrFail(file.getPath());
+            } else {
+                picture = new Picture(decode(file, subsampling));
+            }
+        } catch (IOException e) {
+            return new Picture(fileName);
+        }
+        put(key, new Entry(lastModified, size, picture));
+        return copy(picture, fileName);
+    }
+
+    /**
+     * @param fileName the file, found the same way as new Picture(fileName)
+     * @return true if the whole file is decoded and cached, so get() would not decode it
+     */
+    public boolean contains(String fileName) {
+        File file = find(fileName);
+        String key = canonicalPath(file);
+        if (key == null) {
+            return false;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            return entry != null && entry.lastModified == file.lastModified() && entry.size == file.length();
+        }
+    }
+
+    /**
+     * Work out how much to subsample a file so its longest side fits, reading
+     * only its header
+     * @param fileName the file, found the same way as new Picture(fileName)
+     * @param longestSide the most pixels the width or height should have
+     * @return the smallest n that fits, 1 if the file already fits or cannot be read
+     */
+    public static int getSubsampling(String fileName, int longestSide) {
+        File file = find(fileName);
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = in == null ? null : firstReader(in);
+            if (reader == null) {
+                return 1;
+            }
+            try {
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                return Math.max(1, (longest + longestSide - 1) / longestSide);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    // decode every nth pixel of every nth row
+    private static BufferedImage decode(File file, int subsampling) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = in == null ? null : firstReader(in);
+            if (reader == null) {
+                throw new IOException(file + " is not in a supported image format");
+            }
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageReader firstReader(ImageInputStream in) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(in);
+        return reader;
+    }
+
+    /**
+     * Get a name for the current contents of a file, which changes when the
+     * file is edited, for keying results computed from it
+     * @param fileName the file, found the same way as new Picture(fileName)
+     * @return the canonical path, modified time and size, or null if the file cannot be read
+     */
+    public static String getFileKey(String fileName) {
+        File file = find(fileName);
+        String path = canonicalPath(file);
+        return path == null ? null : path + "@" + file.lastModified() + ":" + file.length();
+    }
+
+    // the file itself, or in the media folder like SimplePicture.loadOrFail
+    private static File find(String fileName) {
+        File file = new File(fileName);
+        return file.canRead() ? file : new File(FileChooser.getMediaPath(fileName));
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.canRead() ? file.getCanonicalPath() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.bytes();
+        }
+        if (entry.bytes() > budget) {
+            return; // would push everything else out
+        }
+        entries.put(key, entry);
+        bytes += entry.bytes();
+        trim();
+    }
+
+    // drop the least recently used pictures until under budget
+    private void trim() {
+        Iterator<Entry> oldestFirst = entries.values().iterator();
+        while (bytes > budget && oldestFirst.hasNext()) {
+            bytes -= oldestFirst.next().bytes();
+            oldestFirst.remove();
+            evictions++;
+        }
+    }
+
+    // a copy with the same image type, so alpha is kept
+    private static Picture copy(Picture picture, String fileName) {
+        BufferedImage image = picture.getBufferedImage();
+        Picture result = new Picture(new BufferedImage(image.getWidth(), image.getHeight(), image.getType()));
+        int[] pixels = picture.getPixelData();
+        System.arraycopy(pixels, 0, result.getPixelData(), 0, pixels.length);
+        result.setFileName(fileName);
+        result.setTitle(fileName);
+        return result;
+    }
+
+    /**
+     * @param budget the most bytes of pixels to keep; lowering it drops pictures now
+     */
+    public synchronized void setBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("budget must not be negative but was " + budget);
+        }
+        this.budget = budget;
+        trim();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the bytes of pixels held now
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Drop every picture and reset the counts
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        hits = misses = evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PictureCache[" + entries.size() + " pictures, " + bytes + "/" + budget + " bytes, "
+               + hits + " hits, " + misses + " misses, " + evictions + " evictions]";
+    }
+
+    /**
+     * Unit tests for PictureCache
+     */
+    public static void runUnitTests() {
+        System.out.println("=== PictureCache Unit Tests ===");
+
+        File folder;
+        try {
+            folder = Files.createTempDirectory("picturecache").toFile();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        String first = new File(folder, "first.png").getPath();
+        String second = new File(folder, "second.png").getPath();
+        Picture picture = new Picture(20, 30);
+        picture.forEachPixel((x, y, p) -> 0xff000000 | (x * 8 << 16) | (y * 12 << 8) | 77);
+        picture.write(first);
+        picture.write(second);
+        long pictureBytes = 4L * 30 * 20;
+
+        // Test 1: the second get is a hit and matches the file
+        PictureCache cache = new PictureCache(10 * pictureBytes);
+        Picture a = cache.get(first);
+        Picture b = cache.get(first);
+        System.out.println("Test 1 - Two gets: " + cache);
+        assert cache.getMisses() == 1 && cache.getHits() == 1 : "Second get should be a hit";
+        assert Picture.isSame(b, picture) : "Cached picture should match the file";
+        System.out.println("✓ Hits work correctly");
+
+        // Test 2: changing a handout does not change the cached picture
+        a.setBasicPixel(0, 0, 0xff00ff00);
+        assert cache.get(first).getBasicPixel(0, 0) == picture.getBasicPixel(0, 0) : "Cache was changed";
+        assert a != b && a.getPixelData() != b.getPixelData() : "Handouts should not share pixels";
+        System.out.println("Test 2 - Changing a handout leaves the cache alone");
+        System.out.println("✓ Copies work correctly");
+
+        // Test 3: a file with a new modified time is decoded again
+        new File(first).setLastModified(new File(first).lastModified() - 5000);
+        cache.get(first);
+        assert cache.getMisses() == 2 && cache.size() == 1 : "Changed file should be a miss and replace the old one";
+        System.out.println("Test 3 - Changed file: " + cache);
+        System.out.println("✓ Changed files work correctly");
+
+        // Test 4: going over the budget drops the least recently used picture
+        cache.setBudget(pictureBytes);
+        cache.get(second);
+        assert cache.getEvictions() == 1 && cache.getBytes() == pictureBytes : "First picture should be dropped";
+        cache.get(second);
+        cache.get(first);
+        System.out.println("Test 4 - Budget of one picture: " + cache);
+        assert cache.getHits() == 3 && cache.getMisses() == 4 && cache.getEvictions() == 2 : "Counts are wrong";
+        assert cache.contains(first) && !cache.contains(second) : "Only the kept picture should be contained";
+        System.out.println("✓ Eviction works correctly");
+
+        // Test 5: a proxy reads every nth pixel and is cached on its own
+        assert getSubsampling(first, 16) == 2 && getSubsampling(first, 30) == 1 : "Subsampling is wrong";
+        Picture proxy = cache.get(first, 2);
+        System.out.println("Test 5 - Every 2nd pixel: " + proxy.getWidth() + "x" + proxy.getHeight() + ", " + cache);
+        assert proxy.getWidth() == 15 && proxy.getHeight() == 10 : "Proxy size is wrong";
+        assert proxy.getBasicPixel(3, 4) == picture.getBasicPixel(6, 8) : "Proxy should read every 2nd pixel";
+        assert cache.size() == 1 && cache.getMisses() == 5 : "Proxy should replace the full picture in a small budget";
+        System.out.println("✓ Proxies work correctly");
+
+        new File(first).delete();
+        new File(second).delete();
+        folder.delete();
+        System.out.println("=== All PictureCache tests passed! ===\n");
+    }
+}
@@ -92,6 +92,18 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   /** the number system to use, 0 means starting at 0, 1 means starting at 1 */
   private int numberBase=0;
   
+  /** the most often a mouse drag updates the information, about once a frame */
+  private static final int DRAG_UPDATE_DELAY = 16;
+  
+  /** the timer that holds back drag updates until the next frame */
+  private Timer dragTimer;
+  
+  /** the latest drag that hasn't been shown yet, or null */
+  private MouseEvent pendingDrag;
+  
+  /** the color shown in the labels, or -1 if none is shown */
+  private int shownColor = -1;
+  
   /**
    * Public constructor 
    * @param picture the picture to explore
@@ -101,11 +113,44 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     // set the fields
     this.picture=picture;
     zoomFactor=1;
+    dragTimer = new Timer(DRAG_UPDATE_DELAY, e -> showPendingDrag());
+    dragTimer.setRepeats(false);
     
     // create the window and set things up
     createWindow();
   }
   
+  /**
+   * Method to show a different picture in this explorer without making
+   * a new window.  The picture is shown directly, not copied, and the old
+   * picture and its smaller zoom levels are let go so their memory can be reused.
+   * The zoom and the current location are kept.
+   * @param picture the new picture to explore
+   */
+  public void setPicture(DigitalPicture picture)
+  {
+    this.picture = picture;
+    pictureFrame.setTitle(picture.getTitle());
+    
+    // show the new picture at the current zoom
+    imageDisplay.setImage(picture.getBufferedImage());
+    imageDisplay.revalidate();
+    checkScroll();
+    
+    // update the pixel information (cleared if the location isn't in the new picture)
+    displayPixelInformation(colIndex, rowIndex);
+    pictureFrame.setVisible(true);
+  }
+  
+  /**
+   * Method to check if the explorer window is still open
+   * @return true if the window has not been closed
+   */
+  public boolean isOpen()
+  {
+    return pictureFrame.isDisplayable();
+  }
+  
   /**
    * Changes the number system to start at one
    */
@@ -464,8 +509,8 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   }
   
   /**
-   * Zooms in the on picture by scaling the image.  
-   * It is extremely memory intensive.
+   * Zooms in the on picture.  The image display scales only the part
+   * that is showing as it paints, so no zoomed copy is made.
    * @param factor the amount to zoom by
    */
   public void zoom(double factor)
@@ -473,15 +518,9 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     // save the current zoom factor
     zoomFactor = factor;
     
-    // calculate the new width and height and get an image that size
-    int width = (int) (picture.getWidth()*zoomFactor);
-    int height = (int) (picture.getHeight()*zoomFactor);
-    BufferedImage bimg = picture.getBufferedImage();
-    
-    // set the scroll image icon to the new image
-    imageDisplay.setImage(bimg.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-    imageDisplay.setCurrentX((int) (colIndex * zoomFactor));
-    imageDisplay.setCurrentY((int) (rowIndex * zoomFactor));
+    // draw the picture at the new size
+    imageDisplay.setZoom(zoomFactor);
+    imageDisplay.setCurrentLocation((int) (colIndex * zoomFactor), (int) (rowIndex * zoomFactor));
     imageDisplay.revalidate();
     checkScroll();  // check if need to reposition scroll
   }
@@ -491,6 +530,8 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
    */
   public void repaint()
   {
+    // the picture may have changed, so zoomed copies are out of date
+    imageDisplay.imageChanged();
     pictureFrame.repaint();
   }
   
@@ -504,7 +545,29 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
    */
   public void mouseDragged(MouseEvent e)
   {
-    displayPixelInformation(e);
+    // show the first drag now, then at most one per frame
+    if (dragTimer.isRunning())
+      pendingDrag = e;
+    else
+    {
+      displayPixelInformation(e);
+      dragTimer.start();
+    }
+  }
+  
+  /**
+   * Method to show the latest drag that came in while waiting for the
+   * next frame, skipping the ones before it
+   */
+  private void showPendingDrag()
+  {
+    if (pendingDrag != null)
+    {
+      MouseEvent e = pendingDrag;
+      pendingDrag = null;
+      displayPixelInformation(e);
+      dragTimer.start();
+    }
   }
   
   /**
@@ -561,16 +624,26 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
       colIndex = pictureX;
       rowIndex = pictureY;
       
-      // get the pixel at the x and y
-      Pixel pixel = new Pixel(picture,colIndex,rowIndex);
+      // set the location, only changing the text if it is different
+      String colText = Integer.toString(colIndex + numberBase);
+      String rowText = Integer.toString(rowIndex + numberBase);
+      if (!colText.equals(colValue.getText()))
+        colValue.setText(colText);
+      if (!rowText.equals(rowValue.getText()))
+        rowValue.setText(rowText);
       
-      // set the values based on the pixel
-      colValue.setText(Integer.toString(colIndex  + numberBase));
-      rowValue.setText(Integer.toString(rowIndex + numberBase));
-      rValue.setText("R: " + pixel.getRed());
-      gValue.setText("G: " + pixel.getGreen());
-      bValue.setText("B: " + pixel.getBlue());
-      colorPanel.setBackground(new Color(pixel.getRed(), pixel.getGreen(), pixel.getBlue()));
+      // get the pixel at the x and y in one read
+      int color = picture.getBasicPixel(colIndex, rowIndex) & 0xffffff;
+      
+      // set the color values only if the color is different
+      if (color != shownColor)
+      {
+        shownColor = color;
+        rValue.setText("R: " + ((color >> 16) & 0xff));
+        gValue.setText("G: " + ((color >> 8) & 0xff));
+        bValue.setText("B: " + (color & 0xff));
+        colorPanel.setBackground(new Color(color));
+      }
       
     } 
     else
@@ -579,8 +652,7 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     }
     
     // notify the image display of the current x and y
-    imageDisplay.setCurrentX((int) (colIndex * zoomFactor));
-    imageDisplay.setCurrentY((int) (rowIndex * zoomFactor));
+    imageDisplay.setCurrentLocation((int) (colIndex * zoomFactor), (int) (rowIndex * zoomFactor));
   }
   
   /**
@@ -615,6 +687,7 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     gValue.setText("G: N/A");
     bValue.setText("B: N/A");
     colorPanel.setBackground(Color.black);
+    shownColor = -1;
     colIndex = -1;
     rowIndex = -1;
   }
@@ -0,0 +1,272 @@
+/**
+ * A reusable, movable reference to a pixel in a picture.  Unlike
+ * Pixel, one cursor can be moved over every location in a picture,
+ * so looping over a large picture doesn't create an object per pixel.
+ * All values are read from and written to the picture right away.
+ * 
+ * <pre>
+ * PixelCursor cursor = picture.getPixelCursor();
+ * while (cursor.next())
+ *   cursor.setBlue(0);
+ * </pre>
+ */
+public class PixelCursor
+{
+  
+  ////////////////////////// fields ///////////////////////////////////
+  
+  /** the digital picture this cursor moves over */
+  private DigitalPicture picture;
+  
+  /** the width of the picture */
+  private int width;
+  
+  /** the height of the picture */
+  private int height;
+  
+  /** the current x (column) location; -1 before the first call to next */
+  private int x;
+  
+  /** the current y (row) location */
+  private int y;
+  
+  ////////////////////// constructors /////////////////////////////////
+  
+  /**
+   * A constructor that takes the picture to move over.  The cursor
+   * starts just before the first pixel so call next or moveTo before
+   * using it.
+   * @param picture the picture to move over
+   */
+  public PixelCursor(DigitalPicture picture)
+  {
+    this.picture = picture;
+    this.width = picture.getWidth();
+    this.height = picture.getHeight();
+    reset();
+  }
+  
+  ///////////////////////// methods //////////////////////////////
+  
+  /**
+   * Method to move the cursor back to just before the first pixel
+   */
+  public void reset()
+  {
+    x = -1;
+    y = 0;
+  }
+  
+  /**
+   * Method to move to the next pixel in row-major order (left to 
+   * right then top to bottom)
+   * @return true if the cursor is on a pixel, false if it went past the end
+   */
+  public boolean next()
+  {
+    x++;
+    if (x >= width)
+    {
+      x = 0;
+      y++;
+    }
+    return y < height;
+  }
+  
+  /**
+   * Method to move the cursor to a location
+   * @param x the x (column) location to move to
+   * @param y the y (row) location to move to
+   */
+  public void moveTo(int x, int y)
+  {
+    if (x < 0 || y < 0 || x >= width || y >= height)
+      throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+    this.x = x;
+    this.y = y;
+  }
+  
+  /**
+   * Method to get the x location of the cursor
+   * @return the x location of the cursor in the picture
+   */
+  public int getX() { return x; }
+  
+  /**
+   * Method to get the y location of the cursor
+   * @return the y location of the cursor in the picture
+   */
+  public int getY() { return y; }
+  
+  /** 
+   * Method to get the row (y value)
+   * @return the row (y value) of the cursor in the picture
+   */
+  public int getRow() { return y; }
+  
+  /** 
+   * Method to get the column (x value)
+   * @return the column (x value) of the cursor in the picture
+   */
+  public int getCol() { return x; }
+  
+  /**
+   * Method to get the value of the pixel under the cursor as an int
+   * @return the (alpha, red, green, blue) value of the pixel
+   */
+  public int getBasicPixel()
+  {
+    return picture.getBasicPixel(x,y);
+  }
+  
+  /**
+   * Method to set the value of the pixel under the cursor from an int
+   * @param value the new (alpha, red, green, blue) value of the pixel
+   */
+  public void setBasicPixel(int value)
+  {
+    picture.setBasicPixel(x,y,value);
+  }
+  
+  /**
+   * Method to get the amount of alpha (transparency) at the cursor
+   * @return the amount of alpha from 0 to 255
+   */
+  public int getAlpha() { return (getBasicPixel() >> 24) & 0xff; }
+  
+  /**
+   * Method to get the amount of red at the cursor
+   * @return the amount of red from 0 to 255
+   */
+  public int getRed() { return Pixel.getRed(getBasicPixel()); }
+  
+  /**
+   * Method to get the amount of green at the cursor
+   * @return the amount of green from 0 to 255
+   */
+  public int getGreen() { return Pixel.getGreen(getBasicPixel()); }
+  
+  /**
+   * Method to get the amount of blue at the cursor
+   * @return the amount of blue from 0 to 255
+   */
+  public int getBlue() { return Pixel.getBlue(getBasicPixel()); }
+  
+  /**
+   * Method to set the red, green, and blue at the cursor while 
+   * keeping the alpha.  Values are corrected to be within 0 to 255.
+   * @param red the new red value
+   * @param green the new green value
+   * @param blue the new blue value
+   */
+  public void setColor(int red, int green, int blue)
+  {
+    int alpha = getBasicPixel() & 0xff000000;
+    setBasicPixel(alpha | (correctValue(red) << 16) | 
+                  (correctValue(green) << 8) | correctValue(blue));
+  }
+  
+  /**
+   * Method to set the red at the cursor
+   * @param value the new red value (corrected to be within 0 to 255)
+   */
+  public void setRed(int value)
+  {
+    setChannel(16, value);
+  }
+  
+  /**
+   * Method to set the green at the cursor
+   * @param value the new green value (corrected to be within 0 to 255)
+   */
+  public void setGreen(int value)
+  {
+    setChannel(8, value);
+  }
+  
+  /**
+   * Method to set the blue at the cursor
+   * @param value the new blue value (corrected to be within 0 to 255)
+   */
+  public void setBlue(int value)
+  {
+    setChannel(0, value);
+  }
+  
+  /**
+   * Method to replace one 8 bit channel of the pixel under the cursor
+   * @param shift how far the channel is shifted left in the packed int
+   * @param value the new channel value
+   */
+  private void setChannel(int shift, int value)
+  {
+    int current = getBasicPixel();
+    setBasicPixel((current & ~(0xff << shift)) | (correctValue(value) << shift));
+  }
+  
+  /**
+   * Method to correct a color value to be within 0 to 255
+   * @param value the value to use
+   * @return a value within 0 to 255
+   */
+  private static int correctValue(int value)
+  {
+    if (value < 0)
+      value = 0;
+    if (value > 255)
+      value = 255;
+    return value;
+  }
+  
+  /**
+   * Method to return a string with information about the cursor
+   * @return a string with the location and color under the cursor
+   */
+  public String toString()
+  {
+    return "PixelCursor row=" + getRow() + 
+      " col=" + getCol() +
+      " red=" + getRed() + 
+      " green=" + getGreen() + 
+      " blue=" + getBlue();
+  }
+  
+  /**
+   * Unit tests for PixelCursor and forEachPixel
+   */
+  public static void runUnitTests()
+  {
+    System.out.println("=== PixelCursor Unit Tests ===");
+    
+    // Test 1: next visits every pixel in row-major order
+    Picture picture = new Picture(3, 4);
+    PixelCursor cursor = picture.getPixelCursor();
+    int count = 0;
+    while (cursor.next())
+    {
+      assert cursor.getRow() == count / 4 && cursor.getCol() == count % 4 : "Wrong visiting order";
+      count++;
+    }
+    System.out.println("Test 1 - next visited " + count + " pixels");
+    assert count == 12 : "Should visit all 12 pixels";
+    System.out.println("✓ next works correctly");
+    
+    // Test 2: setting channels keeps the other channels
+    cursor.moveTo(2, 1);
+    cursor.setColor(10, 20, 30);
+    cursor.setGreen(300);
+    Pixel pixel = picture.getPixel(2, 1);
+    System.out.println("Test 2 - Set channels: " + cursor);
+    assert pixel.getRed() == 10 && pixel.getGreen() == 255 && pixel.getBlue() == 30 : "Channels wrong";
+    assert pixel.getAlpha() == 255 : "Alpha should be kept";
+    System.out.println("✓ Setting channels works correctly");
+    
+    // Test 3: forEachPixel writes back the returned value
+    picture.forEachPixel((x, y, value) -> (value & 0xff000000) | (x << 16) | (y << 8));
+    System.out.println("Test 3 - forEachPixel: pixel (3,2) is " + picture.getPixel(3, 2).getColor());
+    assert picture.getPixel(3, 2).getRed() == 3 && picture.getPixel(3, 2).getGreen() == 2 : "forEachPixel failed";
+    System.out.println("✓ forEachPixel works correctly");
+    
+    System.out.println("=== All PixelCursor tests passed! ===\n");
+  }
+}
@@ -0,0 +1,202 @@
+/**
+ * PixelKernels are loops that run one effect over a range of packed ARGB
+ * pixels in an int array. They are used for the effects that are simple bit
+ * math on the whole pixel, so they can be done several pixels at a time.
+ *
+ * There are two versions:
+ * - the scalar one below, which always works
+ * - VectorPixelKernels in simd/, which uses the Java Vector API
+ *   (jdk.incubator.vector) to work on a whole SIMD register of pixels
+ *
+ * get() picks the vector version when it was compiled and the JVM was started
+ * with --add-modules jdk.incubator.vector, and the scalar one otherwise. Both
+ * give exactly the same output. Set -Dimageapp.simd=false to force scalar.
+ *
+ * All kernels keep the alpha byte of each pixel as it is.
+ */
+public abstract class PixelKernels {
+    // the lowest two bits of red, green and blue cleared
+    static final int CLEAR_LOW_MASK = 0xfffcfcfc;
+    // where the highest two bits of each color end up after shifting right by 6
+    static final int HIGH_BITS_MASK = 0x00030303;
+
+    private static PixelKernels selected;
+
+    /**
+     * @return the kernels to use on this JVM
+     */
+    public static synchronized PixelKernels get() {
+        if (selected == null) {
+            selected = loadVectorKernels();
+            if (selected == null) selected = scalar();
+        }
+        return selected;
+    }
+
+    /**
+     * @return the plain Java kernels
+     */
+    public static PixelKernels scalar() {
+        return new Scalar();
+    }
+
+    private static PixelKernels loadVectorKernels() {
+        if (!Boolean.parseBoolean(System.getProperty("imageapp.simd", "true"))) {
+            return null;
+        }
+        try {
+            PixelKernels kernels = (PixelKernels) Class.forName("VectorPixelKernels")
+                .getDeclaredConstructor().newInstance();
+            // make sure the vector classes really link before using them
+            int[] check = {0xff123456, 0xff654321, 0x80abcdef};
+            kernels.negative(check, 0, check.length);
+            return kernels;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // not compiled or jdk.incubator.vector not added, use scalar
+            return null;
+        }
+    }
+
+    /**
+     * @return a short name for this set of kernels
+     */
+    public abstract String getName();
+
+    /**
+     * Subtract red, green and blue from 255
+     */
+    public abstract void negative(int[] pixels, int from, int to);
+
+    /**
+     * Swap RGB to BRG
+     */
+    public abstract void recolorBRG(int[] pixels, int from, int to);
+
+    /**
+     * Set red, green and blue to (red + green + blue) / 3
+     */
+    public abstract void grayscale(int[] pixels, int from, int to);
+
+    /**
+     * And every pixel with a mask (0xfffcfcfc clears the low bits, 0xffffff00 zeroes blue)
+     */
+    public abstract void and(int[] pixels, int from, int to, int mask);
+
+    /**
+     * Hide the highest two bits of each secret color in the lowest two bits of
+     * each cover color, for count pixels
+     * @param cover the pixels to hide in, changed in place
+     * @param coverFrom the first cover index
+     * @param secret the pixels to hide
+     * @param secretFrom the first secret index
+     * @param count how many pixels
+     */
+    public abstract void hide(int[] cover, int coverFrom, int[] secret, int secretFrom, int count);
+
+    /**
+     * (red + green + blue) / 3 for sums 0..765 without a divide, the same way
+     * in both versions
+     */
+    static int divideBy3(int sum) {
+        return (sum * 0xaaab) >>> 17;
+    }
+
+    /**
+     * The plain Java version of every kernel
+     */
+    private static class Scalar extends PixelKernels {
+        public String getName() {
+            return "scalar";
+        }
+
+        public void negative(int[] pixels, int from, int to) {
+            for (int i = from; i < to; i++) {
+                pixels[i] ^= 0x00ffffff;
+            }
+        }
+
+        public void recolorBRG(int[] pixels, int from, int to) {
+            for (int i = from; i < to; i++) {
+                int p = pixels[i];
+                pixels[i] = (p & 0xff000000) | ((p & 0xff) << 16) | ((p >>> 8) & 0xffff);
+            }
+        }
+
+        public void grayscale(int[] pixels, int from, int to) {
+            for (int i = from; i < to; i++) {
+                int p = pixels[i];
+                int avg = divideBy3(((p >>> 16) & 0xff) + ((p >>> 8) & 0xff) + (p & 0xff));
+                pixels[i] = (p & 0xff000000) | (avg << 16) | (avg << 8) | avg;
+            }
+        }
+
+        public void and(int[] pixels, int from, int to, int mask) {
+            for (int i = from; i < to; i++) {
+                pixels[i] &= mask;
+            }
+        }
+
+        public void hide(int[] cover, int coverFrom, int[] secret, int secretFrom, int count) {
+            for (int i = 0; i < count; i++) {
+                cover[coverFrom + i] = (cover[coverFrom + i] & CLEAR_LOW_MASK)
+                                     | ((secret[secretFrom + i] >>> 6) & HIGH_BITS_MASK);
+            }
+        }
+    }
+
+    /**
+     * Unit tests for PixelKernels - the selected kernels must match the
+     * scalar kernels and the per-pixel color effects exactly
+     */
+    public static void runUnitTests() {
+        System.out.println("=== PixelKernels Unit Tests ===");
+        PixelKernels scalar = scalar();
+        PixelKernels kernels = get();
+        System.out.println("Using " + kernels.getName() + " kernels");
+
+        // odd length so the vector version has a leftover tail to handle
+        int[] source = new int[1037];
+        int[] secret = new int[source.length];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (i * 0x9e3779b9) ^ (i << 7);
+            secret[i] = ~source[i] * 31 + i;
+        }
+
+        // Test 1: divide by 3 trick is exact for every possible sum
+        for (int sum = 0; sum <= 765; sum++) {
+            assert divideBy3(sum) == sum / 3 : "divideBy3 wrong for " + sum;
+        }
+        System.out.println("Test 1 - divideBy3 exact for 0..765");
+        System.out.println("✓ divideBy3 works correctly");
+
+        // Test 2: every kernel gives the same output as scalar and as ColorOp
+        for (int k = 0; k < 5; k++) {
+            int[] expected = source.clone();
+            int[] actual = source.clone();
+            runKernel(scalar, k, expected, secret);
+            runKernel(kernels, k, actual, secret);
+            assert java.util.Arrays.equals(expected, actual) : "Kernel " + k + " differs from scalar";
+        }
+        ColorOp[] ops = {ColorOp.negative(), ColorOp.recolorBRG(), ColorOp.grayscale(), ColorOp.clearLow()};
+        for (int k = 0; k < ops.length; k++) {
+            int[] expected = source.clone();
+            ops[k].applyAll(expected, 0, expected.length);
+            for (int i = 0; i < source.length; i++) {
+                assert expected[i] == ops[k].apply(source[i]) : "Kernel " + k + " differs from ColorOp";
+            }
+        }
+        System.out.println("Test 2 - " + kernels.getName() + " kernels match scalar and ColorOp on "
+                           + source.length + " pixels");
+        System.out.println("✓ Kernels work correctly");
+
+        System.out.println("=== All PixelKernels tests passed! ===\n");
+    }
+
+    private static void runKernel(PixelKernels kernels, int which, int[] pixels, int[] secret) {
+        if (which == 0) kernels.negative(pixels, 3, pixels.length);
+        else if (which == 1) kernels.recolorBRG(pixels, 0, pixels.length);
+        else if (which == 2) kernels.grayscale(pixels, 0, pixels.length - 2);
+        else if (which == 3) kernels.and(pixels, 0, pixels.length, CLEAR_LOW_MASK);
+        else kernels.hide(pixels, 5, secret, 1, pixels.length - 6);
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ * PixelPipeline renders a background picture, and optionally an overlay on
+ * top of it, in a single pass over the output.
+ *
+ * Each layer records its stages: color effects are chained into one ColorOp
+ * and rotations and other geometric stages are multiplied into one transform
+ * that says where the source pixel is read from, so no intermediate pictures
+ * are made. For every output pixel the background
+ * and overlay sources are each read once, the fused effects are applied and
+ * the result is written once.
+ */
+public class PixelPipeline {
+    // overlay pixels with all three values at or above this are treated as background
+    private static final int WHITE_THRESHOLD = 250;
+    private static final int WHITE = 0xffffffff;
+
+    private Layer background;
+    private Layer overlay;
+    private int overlayRow;
+    private int overlayCol;
+
+    /**
+     * Create a pipeline for a background picture
+     * @param background the source picture for the background
+     */
+    public PixelPipeline(Picture background) {
+        this.background = new Layer(background);
+    }
+
+    /**
+     * @return the background layer, to add stages to
+     */
+    public Layer getBackground() {
+        return background;
+    }
+
+    /**
+     * Put an overlay on top of the background. Near-white overlay pixels are
+     * left out so the background shows through.
+     * @param picture the source picture for the overlay
+     * @param startRow the row of the output where the overlay's top goes
+     * @param startCol the column of the output where the overlay's left goes
+     * @return the overlay layer, to add stages to
+     */
+    public Layer setOverlay(Picture picture, int startRow, int startCol) {
+        overlay = new Layer(picture);
+        overlayRow = startRow;
+        overlayCol = startCol;
+        return overlay;
+    }
+
+    /**
+     * Run the pipeline
+     * @return a new picture the size of the (rotated) background
+     */
+    public Picture render() {
+        int width = background.getWidth();
+        int height = background.getHeight();
+        Picture result = new Picture(height, width);
+        int[] out = result.getPixelData();
+
+        // rows are independent so bands of them can run on separate threads
+        RowBandExecutor.forEachBand(width, height, (fromRow, toRow) -> renderRows(out, width, fromRow, toRow));
+        return result;
+    }
+
+    private void renderRows(int[] out, int width, int fromRow, int toRow) {
+        int[] rowBuffer = new int[width];
+        int[] overlayBuffer = null;
+
+        // columns of the output the overlay covers
+        int fromCol = 0, toCol = 0;
+        if (overlay != null) {
+            fromCol = Math.max(overlayCol, 0);
+            toCol = Math.min(overlayCol + overlay.getWidth(), width);
+            overlayBuffer = new int[Math.max(toCol - fromCol, 0)];
+        }
+
+        for (int row = fromRow; row < toRow; row++) {
+            background.readRow(row, 0, width, rowBuffer);
+
+            int overlaySourceRow = row - overlayRow;
+            if (overlay != null && fromCol < toCol
+                    && overlaySourceRow >= 0 && overlaySourceRow < overlay.getHeight()) {
+                overlay.readRow(overlaySourceRow, fromCol - overlayCol, toCol - fromCol, overlayBuffer);
+                for (int col = fromCol; col < toCol; col++) {
+                    int p = overlayBuffer[col - fromCol];
+                    // skip white pixels
+                    if (((p >> 16) & 0xff) < WHITE_THRESHOLD
+                            || ((p >> 8) & 0xff) < WHITE_THRESHOLD
+                            || (p & 0xff) < WHITE_THRESHOLD) {
+                        rowBuffer[col] = (rowBuffer[col] & 0xff000000) | (p & 0x00ffffff);
+                    }
+                }
+            }
+            System.arraycopy(rowBuffer, 0, out, row * width, width);
+        }
+    }
+
+    /**
+     * Unit tests for PixelPipeline
+     */
+    public static void runUnitTests() {
+        System.out.println("=== PixelPipeline Unit Tests ===");
+
+        // make a small test image with a different color in each pixel
+        Picture source = new Picture(4, 6);
+        source.forEachPixel((x, y, p) -> 0xff000000 | (x * 40 << 16) | (y * 60 << 8) | 7);
+
+        // Test 1: fused effects match running each effect on its own
+        PixelPipeline pipeline = new PixelPipeline(source);
+        pipeline.getBackground().addColorEffect(ColorOp.grayscale()).addColorEffect(ColorOp.negative());
+        Picture fused = pipeline.render();
+        Picture separate = ImageApp.negative(ImageApp.grayscale(source));
+        System.out.println("Test 1 - Grayscale then negative in one pass");
+        assert Picture.isSame(fused, separate) : "Fused effects should match separate effects";
+        System.out.println("✓ Fused color effects work correctly");
+
+        // Test 2: rotations match rotating on their own, and 90 swaps the size
+        pipeline = new PixelPipeline(source);
+        pipeline.getBackground().addRotation(180);
+        Picture rotated = pipeline.render();
+        System.out.println("Test 2 - Rotate 180: (1,1) -> " + rotated.getPixel(4, 2).getColor());
+        assert rotated.getBasicPixel(4, 2) == source.getBasicPixel(1, 1) : "180 rotation failed";
+        pipeline = new PixelPipeline(source);
+        pipeline.getBackground().addColorEffect(ColorOp.negative()).addRotation(90).addRotation(180);
+        rotated = pipeline.render();
+        assert rotated.getWidth() == 4 && rotated.getHeight() == 6 : "90 rotation should swap size";
+        assert Picture.isSame(rotated, ImageApp.rotate(ImageApp.negative(source), 270)) : "Combined rotation failed";
+        pipeline = new PixelPipeline(source);
+        pipeline.getBackground().addRotation(30).addTransform(new Matrix2by2(-1, 0, 0, 1)).addRotation(-30);
+        rotated = pipeline.render();
+        Picture warped = new TransformChain().rotate(30).mirrorHorizontal().rotate(-30).apply(source, Sampling.BILINEAR);
+        assert Picture.isSame(rotated, warped) : "Any angle stages should be one resample";
+        System.out.println("✓ Rotation stage works correctly");
+
+        // Test 3: white overlay pixels are skipped, others are copied
+        Picture sticker = new Picture(2, 2);
+        sticker.setBasicPixel(0, 0, 0xff00ff00);
+        pipeline = new PixelPipeline(source);
+        pipeline.setOverlay(sticker, 1, 2);
+        Picture combined = pipeline.render();
+        System.out.println("Test 3 - Overlay at (1,2)");
+        assert combined.getBasicPixel(2, 1) == 0xff00ff00 : "Overlay pixel should be copied";
+        assert combined.getBasicPixel(3, 1) == source.getBasicPixel(3, 1) : "White pixel should be skipped";
+        System.out.println("✓ Overlay works correctly");
+
+        System.out.println("=== All PixelPipeline tests passed! ===\n");
+    }
+
+    /**
+     * One source picture and the stages to apply to it. Geometric stages are
+     * multiplied into one TransformChain, so however many there are the
+     * source is resampled once. The layer's output is sized to fit, like
+     * ImageApp.rotate. Right angle chains copy whole pixels; anything else
+     * is sampled, with white where the source does not reach.
+     */
+    public static class Layer {
+        private final Picture source;
+        // color effects work on each pixel alone, so they give the same
+        // result before or after moving pixels and can all run as one
+        private ColorOp effects = ColorOp.identity();
+        private final TransformChain geometry = new TransformChain();
+        private Sampling sampling = Sampling.BILINEAR;
+
+        // worked out from geometry: a right angle, or the inverse transform
+        private RightAngleRotation rotation = RightAngleRotation.of(0);
+        private Matrix3by3 toSource;
+        private int width, height;
+
+        private Layer(Picture source) {
+            this.source = source;
+            this.width = source.getWidth();
+            this.height = source.getHeight();
+        }
+
+        /**
+         * Add a color effect stage
+         * @param op the effect
+         * @return this layer
+         */
+        public Layer addColorEffect(ColorOp op) {
+            effects = effects.andThen(op);
+            return this;
+        }
+
+        /**
+         * Add a rotation stage
+         * @param degrees the angle counter-clockwise; right angles are exact
+         * @return this layer
+         */
+        public Layer addRotation(int degrees) {
+            if (degrees % 360 != 0) {
+                geometry.rotate(degrees);
+                updateGeometry();
+            }
+            return this;
+        }
+
+        /**
+         * Add any geometric stage, like a scale or mirror
+         * @param step takes a position (relative to the center) to where it goes
+         * @return this layer
+         */
+        public Layer addTransform(Matrix2by2 step) {
+            geometry.then(step);
+            updateGeometry();
+            return this;
+        }
+
+        /**
+         * Set how to read between source pixels for stages that are not right angles
+         * @param sampling the sampling, bilinear by default
+         * @return this layer
+         */
+        public Layer setSampling(Sampling sampling) {
+            this.sampling = sampling;
+            return this;
+        }
+
+        private void updateGeometry() {
+            int sourceWidth = source.getWidth();
+            int sourceHeight = source.getHeight();
+            rotation = geometry.getRightAngle();
+            if (rotation != null) {
+                toSource = null;
+                width = rotation.getOutputWidth(sourceWidth, sourceHeight);
+                height = rotation.getOutputHeight(sourceWidth, sourceHeight);
+                return;
+            }
+            Matrix3by3 transform = new Matrix3by3(geometry.getMatrix());
+            java.awt.geom.Rectangle2D bounds = Warp.getOutputBounds(transform, sourceWidth, sourceHeight);
+            toSource = transform.then(Matrix3by3.translation(-bounds.getX(), -bounds.getY())).inverse();
+            width = Warp.pixels(bounds.getWidth());
+            height = Warp.pixels(bounds.getHeight());
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Compute part of one row of this layer's output
+         * @param row the output row
+         * @param fromCol the first output column
+         * @param count how many columns
+         * @param dest where to put the pixels, starting at index 0
+         */
+        void readRow(int row, int fromCol, int count, int[] dest) {
+            int[] data = source.getPixelData();
+            int alphaMask = source.getAlphaMask();
+            int sourceWidth = source.getWidth();
+            int sourceHeight = source.getHeight();
+
+            if (rotation != null) {
+                rotation.copyRow(data, sourceWidth, sourceHeight, row, fromCol, count, dest, 0);
+                if (alphaMask != 0) {
+                    for (int i = 0; i < count; i++) {
+                        dest[i] |= alphaMask;
+                    }
+                }
+                effects.applyAll(dest, 0, count);
+                return;
+            }
+
+            // step the source spot along the row; the source is convex so the
+            // pixels it covers are one run, and only those get the effects
+            double x = fromCol * toSource.getA() + row * toSource.getD() + toSource.getG();
+            double y = fromCol * toSource.getB() + row * toSource.getE() + toSource.getH();
+            int first = count, last = -1;
+            for (int i = 0; i < count; i++) {
+                if (Sampling.covers(sourceWidth, sourceHeight, x, y)) {
+                    dest[i] = sampling.sample(data, sourceWidth, sourceHeight, alphaMask, x, y, WHITE);
+                    first = Math.min(first, i);
+                    last = i;
+                } else {
+                    dest[i] = WHITE;
+                }
+                x += toSource.getA();
+                y += toSource.getB();
+            }
+            if (first <= last) {
+                effects.applyAll(dest, first, last + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Interface for code that visits every pixel in a picture without 
+ * creating a Pixel or Color object for each one.  The pixel value is
+ * passed as a packed int with alpha, red, green, and blue each taking
+ * 8 bits from left to right (the same as getBasicPixel).
+ */
+public interface PixelVisitor
+{
+  /**
+   * Method called once for each pixel
+   * @param x the x (column) location of the pixel
+   * @param y the y (row) location of the pixel
+   * @param value the current (alpha, red, green, blue) value of the pixel
+   * @return the new (alpha, red, green, blue) value for the pixel
+   */
+  public int visit(int x, int y, int value);
+}
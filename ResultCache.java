@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * ResultCache remembers the pictures made by each step of a recipe, so
+ * running a recipe again, or a longer recipe that starts the same way, only
+ * runs the steps that have not been run before.
+ *
+ * A recipe is a source (named by something that changes when the source
+ * changes, like PictureCache.getFileKey) and a list of named steps. The
+ * result after each step is kept under the source name and the names of
+ * the steps so far. compute() starts from the longest prefix that is kept.
+ *
+ * Like PictureCache it holds at most a budget of bytes of pixels and drops
+ * the least recently used results to stay under it. The budget in megabytes
+ * of the shared cache can be set with -Dimageapp.results.mb=... (default 128).
+ *
+ * Results are shared, not copied, so that a repeated recipe costs nothing:
+ * steps must not change their input, and callers must copy a result before
+ * changing it.
+ *
+ * compute() checks between steps whether its thread was interrupted, so a
+ * background job that is no longer wanted stops early. Steps that already
+ * finished stay kept for the next recipe.
+ */
+public class ResultCache {
+    private static final ResultCache SHARED =
+        new ResultCache(Long.getLong("imageapp.results.mb", 128) * 1024 * 1024);
+
+    private final Map<String, Picture> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long budget;
+    private long bytes;
+    private long hits, misses, evictions;
+
+    /**
+     * One step of a recipe
+     */
+    public interface Step {
+        /**
+         * @param input the picture from the step before, not to be changed
+         * @return a new picture
+         */
+        Picture apply(Picture input);
+    }
+
+    /**
+     * A source and the steps to run on it, in order
+     */
+    public static class Recipe {
+        private final String source;
+        private final Supplier<Picture> loader;
+        private final List<String> names = new ArrayList<>();
+        private final List<Step> steps = new ArrayList<>();
+
+        /**
+         * @param source a name for the source picture, which changes when its pixels do
+         * @param loader gets the source picture if no step's result is kept
+         */
+        public Recipe(String source, Supplier<Picture> loader) {
+            this.source = source;
+            this.loader = loader;
+        }
+
+        /**
+         * @param name names what the step does; steps with the same name must do the same thing
+         * @param step the step
+         * @return this recipe
+         */
+        public Recipe then(String name, Step step) {
+            names.add(name);
+            steps.add(step);
+            return this;
+        }
+
+        public int getStepCount() {
+            return steps.size();
+        }
+
+        // the key of the result after the first count steps
+        String key(int count) {
+            StringBuilder key = new StringBuilder(source);
+            for (int i = 0; i < count; i++) {
+                key.append(" > ").append(names.get(i));
+            }
+            return key.toString();
+        }
+    }
+
+    /**
+     * @param budget the most bytes of pixels to keep
+     */
+    public ResultCache(long budget) {
+        setBudget(budget);
+    }
+
+    /**
+     * @return the cache shared by the whole program
+     */
+    public static ResultCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Get the result of a recipe, running only the steps after the longest
+     * kept prefix and keeping each new step's result
+     * @param recipe the recipe
+     * @return the result, shared with later callers (see the class comment)
+     * @throws CancellationException if the thread is interrupted before a step
+     */
+    public Picture compute(Recipe recipe) {
+        int done = recipe.getStepCount();
+        Picture picture = null;
+        synchronized (this) {
+            while (done > 0 && (picture = results.get(recipe.key(done))) == null) {
+                done--;
+            }
+            if (picture != null) {
+                hits++;
+            }
+        }
+        if (picture == null) {
+            picture = recipe.loader.get();
+        }
+
+        // run the rest without holding the lock
+        for (int i = done; i < recipe.getStepCount(); i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("stopped before " + recipe.names.get(i));
+            }
+            picture = recipe.steps.get(i).apply(picture);
+            put(recipe.key(i + 1), picture);
+        }
+        return picture;
+    }
+
+    /**
+     * @param recipe the recipe
+     * @return true if the result of every step is kept, so compute() runs nothing
+     */
+    public synchronized boolean contains(Recipe recipe) {
+        return recipe.getStepCount() > 0 && results.containsKey(recipe.key(recipe.getStepCount()));
+    }
+
+    private synchronized void put(String key, Picture picture) {
+        misses++;
+        Picture old = results.remove(key);
+        if (old != null) {
+            bytes -= bytes(old);
+        }
+        if (bytes(picture) > budget) {
+            return; // would push everything else out
+        }
+        results.put(key, picture);
+        bytes += bytes(picture);
+        trim();
+    }
+
+    // drop the least recently used results until under budget
+    private void trim() {
+        Iterator<Picture> oldestFirst = results.values().iterator();
+        while (bytes > budget && oldestFirst.hasNext()) {
+            bytes -= bytes(oldestFirst.next());
+            oldestFirst.remove();
+            evictions++;
+        }
+    }
+
+    private static long bytes(Picture picture) {
+        return 4L * picture.getWidth() * picture.getHeight();
+    }
+
+    /**
+     * @param budget the most bytes of pixels to keep; lowering it drops results now
+     */
+    public synchronized void setBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("budget must not be negative but was " + budget);
+        }
+        this.budget = budget;
+        trim();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the bytes of pixels held now
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * @return how many times compute() started from a kept result
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return how many steps compute() had to run
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Drop every result and reset the counts
+     */
+    public synchronized void clear() {
+        results.clear();
+        bytes = 0;
+        hits = misses = evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResultCache[" + results.size() + " results, " + bytes + "/" + budget + " bytes, "
+               + hits + " hits, " + misses + " steps run, " + evictions + " evictions]";
+    }
+
+    /**
+     * Unit tests for ResultCache
+     */
+    public static void runUnitTests() {
+        System.out.println("=== ResultCache Unit Tests ===");
+
+        Picture source = new Picture(10, 16);
+        source.forEachPixel((x, y, p) -> 0xff000000 | (x * 16 << 16) | (y * 25 << 8) | 40);
+        int[] loads = new int[1];
+        Supplier<Picture> loader = () -> {
+            loads[0]++;
+            return source;
+        };
+        long pictureBytes = 4L * 16 * 10;
+        ResultCache cache = new ResultCache(100 * pictureBytes);
+
+        // Test 1: a recipe gives the same result as running the steps, and keeps each step
+        Recipe grayTurn = new Recipe("source", loader)
+            .then("grayscale", ImageApp::grayscale)
+            .then("rotate 90", p -> ImageApp.rotate(p, 90));
+        Picture first = cache.compute(grayTurn);
+        System.out.println("Test 1 - First run: " + cache);
+        assert Picture.isSame(first, ImageApp.rotate(ImageApp.grayscale(source), 90)) : "Result is wrong";
+        assert cache.getMisses() == 2 && cache.size() == 2 && loads[0] == 1 : "Both steps should run and be kept";
+        System.out.println("✓ Recipes work correctly");
+
+        // Test 2: the same recipe again runs nothing
+        Recipe again = new Recipe("source", loader)
+            .then("grayscale", ImageApp::grayscale)
+            .then("rotate 90", p -> ImageApp.rotate(p, 90));
+        assert cache.contains(again) : "Repeated recipe should be kept";
+        assert cache.compute(again) == first : "Repeated recipe should be the kept result";
+        assert cache.getMisses() == 2 && cache.getHits() == 1 && loads[0] == 1 : "Nothing should run";
+        System.out.println("Test 2 - Same recipe again: " + cache);
+        System.out.println("✓ Repeated recipes work correctly");
+
+        // Test 3: a recipe that shares a prefix only runs the new step
+        Recipe grayFlip = new Recipe("source", loader)
+            .then("grayscale", ImageApp::grayscale)
+            .then("rotate 180", p -> ImageApp.rotate(p, 180));
+        Picture flipped = cache.compute(grayFlip);
+        assert Picture.isSame(flipped, ImageApp.rotate(ImageApp.grayscale(source), 180)) : "Result is wrong";
+        assert cache.getMisses() == 3 && loads[0] == 1 : "Only the rotation should run";
+        System.out.println("Test 3 - Shared prefix: " + cache);
+        System.out.println("✓ Prefixes work correctly");
+
+        // Test 4: a small budget keeps only the most recent results
+        cache.setBudget(2 * pictureBytes);
+        assert cache.size() == 2 && cache.getEvictions() == 1 : "Oldest result should be dropped";
+        System.out.println("Test 4 - Budget of two results: " + cache);
+        System.out.println("✓ Eviction works correctly");
+
+        // Test 5: an interrupted thread stops before the next step
+        Thread.currentThread().interrupt();
+        boolean stopped = false;
+        try {
+            cache.compute(new Recipe("source", loader).then("negative", ImageApp::negative));
+        } catch (CancellationException e) {
+            stopped = true;
+        }
+        Thread.interrupted();
+        assert stopped && cache.getMisses() == 3 : "Interrupted recipe should not run its steps";
+        System.out.println("Test 5 - Interrupted recipe stopped before its step");
+        System.out.println("✓ Cancellation works correctly");
+
+        System.out.println("=== All ResultCache tests passed! ===\n");
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * RotationBenchmark times 90 degree rotations done row by row (naive) and in
+ * cache-sized tiles (blocked) on 4K, 8K and 16K pictures.
+ *
+ * Run it with enough memory for two pictures of the biggest size:
+ *
+ *   java -Xmx4g RotationBenchmark            (4k, 8k and 16k)
+ *   java -Xmx1g RotationBenchmark 4k 8k      (only some sizes)
+ *   java -Xmx1g RotationBenchmark 4k 1       (on one thread)
+ *
+ * A number after the sizes sets RowBandExecutor's parallelism.
+ */
+public class RotationBenchmark {
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        java.util.List<String> sizes = new java.util.ArrayList<>();
+        for (String arg : args) {
+            if (arg.matches("\\d+")) {
+                RowBandExecutor.setParallelism(Integer.parseInt(arg));
+            } else {
+                sizes.add(arg.toLowerCase());
+            }
+        }
+        if (sizes.isEmpty()) {
+            sizes.add("4k");
+            sizes.add("8k");
+            sizes.add("16k");
+        }
+
+        System.out.println("Threads: " + RowBandExecutor.getParallelism()
+                           + ", tile size: " + RightAngleRotation.getTileSize()
+                           + ", best of " + RUNS + " runs");
+        RightAngleRotation rotation = RightAngleRotation.of(90);
+        for (String size : sizes) {
+            int width, height;
+            if (size.equals("4k")) { width = 3840; height = 2160; }
+            else if (size.equals("8k")) { width = 7680; height = 4320; }
+            else if (size.equals("16k")) { width = 15360; height = 8640; }
+            else {
+                System.out.println("Unknown size " + size + ", use 4k, 8k or 16k");
+                continue;
+            }
+
+            Picture source = new Picture(height, width);
+            source.forEachPixel((x, y, p) -> 0xff000000 | (x * 31 + y * 17) & 0xffffff);
+
+            long naive = time(() -> rotation.rotateByRows(source));
+            long blocked = time(() -> rotation.rotate(source));
+            System.out.printf("%-4s %5dx%-5d  naive %7.1f ms  blocked %7.1f ms  speedup %.2fx%n",
+                              size, width, height, naive / 1e6, blocked / 1e6, (double) naive / blocked);
+        }
+    }
+
+    // best time in nanoseconds, after one warm-up run
+    private static long time(java.util.function.Supplier<Picture> rotate) {
+        rotate.get();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            rotate.get();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
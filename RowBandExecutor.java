@@ -0,0 +1,174 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * RowBandExecutor runs work on a picture in parallel by splitting its rows
+ * into bands and running the bands on a ForkJoinPool.
+ *
+ * Each band only writes its own rows of the output, so the result is exactly
+ * the same as running all the rows in order on one thread. Pictures with
+ * fewer pixels than the sequential cutoff (like the 10x10 test pictures) are
+ * just run on the calling thread.
+ */
+public class RowBandExecutor {
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+    private static int sequentialCutoff = 64 * 1024;
+    private static ForkJoinPool pool;
+
+    /**
+     * Work to do on a band of rows
+     */
+    public interface RowTask {
+        /**
+         * Process rows fromRow (inclusive) to toRow (exclusive)
+         * @param fromRow the first row of the band
+         * @param toRow one past the last row of the band
+         */
+        void run(int fromRow, int toRow);
+    }
+
+    /**
+     * Set how many threads to use. 1 runs everything on the calling thread.
+     * @param threads the number of threads, at least 1
+     */
+    public static synchronized void setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1 but was " + threads);
+        }
+        if (threads != parallelism && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        parallelism = threads;
+    }
+
+    public static synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the most pixels a band can have before it is split in two. Pictures
+     * with at most this many pixels are not split at all.
+     * @param pixels the cutoff, at least 1
+     */
+    public static synchronized void setSequentialCutoff(int pixels) {
+        if (pixels < 1) {
+            throw new IllegalArgumentException("sequential cutoff must be at least 1 but was " + pixels);
+        }
+        sequentialCutoff = pixels;
+    }
+
+    public static synchronized int getSequentialCutoff() {
+        return sequentialCutoff;
+    }
+
+    /**
+     * Run a task over all rows of a picture, in parallel if it is big enough
+     * @param width the width of the picture in pixels
+     * @param height the height of the picture in pixels
+     * @param task the work to do on each band of rows
+     */
+    public static void forEachBand(int width, int height, RowTask task) {
+        ForkJoinPool workers;
+        int cutoff;
+        synchronized (RowBandExecutor.class) {
+            cutoff = sequentialCutoff;
+            if (parallelism == 1 || (long) width * height <= cutoff) {
+                workers = null;
+            } else {
+                if (pool == null) pool = new ForkJoinPool(parallelism);
+                workers = pool;
+            }
+        }
+        if (workers == null) {
+            task.run(0, height);
+        } else {
+            workers.invoke(new Band(task, 0, height, Math.max(width, 1), cutoff));
+        }
+    }
+
+    /**
+     * A band of rows that splits itself in half until it is small enough
+     */
+    private static class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowTask task;
+        private final int fromRow, toRow, width, cutoff;
+
+        Band(RowTask task, int fromRow, int toRow, int width, int cutoff) {
+            this.task = task;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.width = width;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = toRow - fromRow;
+            if (rows <= 1 || (long) rows * width <= cutoff) {
+                task.run(fromRow, toRow);
+                return;
+            }
+            int middle = fromRow + rows / 2;
+            invokeAll(new Band(task, fromRow, middle, width, cutoff),
+                      new Band(task, middle, toRow, width, cutoff));
+        }
+    }
+
+    /**
+     * Unit tests for RowBandExecutor
+     */
+    public static void runUnitTests() {
+        System.out.println("=== RowBandExecutor Unit Tests ===");
+
+        // make a test image big enough to split with a small cutoff
+        Picture source = new Picture(150, 200);
+        source.forEachPixel((x, y, p) -> 0xff000000 | ((x * 7 + y) & 0xff) << 16 | ((x ^ y) & 0xff) << 8 | (y & 0xff));
+        Picture small = new Picture(40, 30);
+        small.forEachPixel((x, y, p) -> (x + y) % 3 == 0 ? p : 0xff204060);
+
+        int oldParallelism = getParallelism();
+        int oldCutoff = getSequentialCutoff();
+        try {
+            setParallelism(1);
+            Picture[] sequential = runEffects(source, small);
+            setParallelism(4);
+            setSequentialCutoff(500);
+            Picture[] parallel = runEffects(source, small);
+
+            // Test 1: parallel output is the same as sequential output
+            System.out.println("Test 1 - " + sequential.length + " effects on 200x150 in bands of 500 pixels");
+            for (int i = 0; i < sequential.length; i++) {
+                assert sequential[i].getWidth() == parallel[i].getWidth()
+                    && sequential[i].getHeight() == parallel[i].getHeight() : "Size differs for effect " + i;
+                assert java.util.Arrays.equals(sequential[i].getBasicPixels(), parallel[i].getBasicPixels())
+                    : "Parallel output differs for effect " + i;
+            }
+            System.out.println("✓ Parallel output matches sequential output");
+
+            // Test 2: every row is visited exactly once
+            int[] visits = new int[150];
+            forEachBand(200, 150, (from, to) -> {
+                for (int row = from; row < to; row++) visits[row]++;
+            });
+            for (int count : visits) assert count == 1 : "Each row should be visited once";
+            System.out.println("Test 2 - Each row visited once");
+            System.out.println("✓ Bands cover the picture correctly");
+        } finally {
+            setParallelism(oldParallelism);
+            setSequentialCutoff(oldCutoff);
+        }
+
+        System.out.println("=== All RowBandExecutor tests passed! ===\n");
+    }
+
+    private static Picture[] runEffects(Picture source, Picture small) {
+        return new Picture[] {
+            ImageApp.recolor(source), ImageApp.negative(source), ImageApp.grayscale(source),
+            ImageApp.rotate(source, 90), ImageApp.rotate(source, 180), ImageApp.rotate(source, 270),
+            ImageApp.insert(source, small, 100, 170)
+        };
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Sampling is how a pixel value is read at a position between pixels, for
+ * rotations by angles that do not land on whole pixels.
+ *
+ * - NEAREST takes the closest pixel. Fastest, but edges look jagged.
+ * - BILINEAR blends the 4 closest pixels by distance.
+ * - BICUBIC fits a smooth curve through the 16 closest pixels (Catmull-Rom),
+ *   which keeps edges sharper than bilinear.
+ *
+ * Positions are in source pixels, with (0, 0) the center of the top left
+ * pixel. Positions whose closest pixel is outside the source give the fill
+ * color, and neighbours outside the source count as the fill color, so the
+ * edge of a rotated picture blends into the background instead of being jagged.
+ * Alpha is blended like the other channels.
+ */
+public enum Sampling {
+    NEAREST(0) {
+        int sample(int[] data, int width, int height, int alphaMask, double x, double y, int fill) {
+            if (!covers(width, height, x, y)) return fill;
+            return pixelAt(data, width, height, alphaMask,
+                           (int) Math.floor(x + 0.5), (int) Math.floor(y + 0.5), fill);
+        }
+    },
+
+    BILINEAR(1) {
+        int sample(int[] data, int width, int height, int alphaMask, double x, double y, int fill) {
+            if (!covers(width, height, x, y)) return fill;
+            int x0 = (int) Math.floor(x);
+            int y0 = (int) Math.floor(y);
+            double fx = x - x0;
+            double fy = y - y0;
+            int p00 = pixelAt(data, width, height, alphaMask, x0, y0, fill);
+            int p10 = pixelAt(data, width, height, alphaMask, x0 + 1, y0, fill);
+            int p01 = pixelAt(data, width, height, alphaMask, x0, y0 + 1, fill);
+            int p11 = pixelAt(data, width, height, alphaMask, x0 + 1, y0 + 1, fill);
+
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                double top = ((p00 >>> shift) & 0xff) * (1 - fx) + ((p10 >>> shift) & 0xff) * fx;
+                double bottom = ((p01 >>> shift) & 0xff) * (1 - fx) + ((p11 >>> shift) & 0xff) * fx;
+                result |= (int) (top * (1 - fy) + bottom * fy + 0.5) << shift;
+            }
+            return result;
+        }
+    },
+
+    BICUBIC(2) {
+        int sample(int[] data, int width, int height, int alphaMask, double x, double y, int fill) {
+            if (!covers(width, height, x, y)) return fill;
+            int x0 = (int) Math.floor(x);
+            int y0 = (int) Math.floor(y);
+            double tx = x - x0, ty = y - y0;
+            double wx0 = weight(tx, 0), wx1 = weight(tx, 1), wx2 = weight(tx, 2), wx3 = weight(tx, 3);
+
+            // the 4x4 pixels around the position, from (x0 - 1, y0 - 1), a row at a time
+            double blue = 0, green = 0, red = 0, alpha = 0;
+            for (int j = 0; j < 4; j++) {
+                int y1 = y0 - 1 + j;
+                int p0 = pixelAt(data, width, height, alphaMask, x0 - 1, y1, fill);
+                int p1 = pixelAt(data, width, height, alphaMask, x0, y1, fill);
+                int p2 = pixelAt(data, width, height, alphaMask, x0 + 1, y1, fill);
+                int p3 = pixelAt(data, width, height, alphaMask, x0 + 2, y1, fill);
+                double wy = weight(ty, j);
+                blue += row(p0, p1, p2, p3, 0, wx0, wx1, wx2, wx3) * wy;
+                green += row(p0, p1, p2, p3, 8, wx0, wx1, wx2, wx3) * wy;
+                red += row(p0, p1, p2, p3, 16, wx0, wx1, wx2, wx3) * wy;
+                alpha += row(p0, p1, p2, p3, 24, wx0, wx1, wx2, wx3) * wy;
+            }
+            return clamp(blue) | clamp(green) << 8 | clamp(red) << 16 | clamp(alpha) << 24;
+        }
+
+        // Catmull-Rom weight for the pixel at i - 1 from a position t in 0..1
+        private double weight(double t, int i) {
+            switch (i) {
+                case 0: return ((-0.5 * t + 1.0) * t - 0.5) * t;
+                case 1: return (1.5 * t - 2.5) * t * t + 1.0;
+                case 2: return ((-1.5 * t + 2.0) * t + 0.5) * t;
+                default: return (0.5 * t - 0.5) * t * t;
+            }
+        }
+
+        // one channel of four pixels in a row, weighted
+        private double row(int p0, int p1, int p2, int p3, int shift,
+                           double w0, double w1, double w2, double w3) {
+            return ((p0 >>> shift) & 0xff) * w0 + ((p1 >>> shift) & 0xff) * w1
+                   + ((p2 >>> shift) & 0xff) * w2 + ((p3 >>> shift) & 0xff) * w3;
+        }
+
+        // the curve can overshoot next to sharp edges
+        private int clamp(double value) {
+            int v = (int) Math.floor(value + 0.5);
+            return Math.max(0, Math.min(255, v));
+        }
+    };
+
+    private final int radius;
+
+    Sampling(int radius) {
+        this.radius = radius;
+    }
+
+    /**
+     * @return how many pixels past the one before a position are read, so a
+     *         region can be grown enough to sample anywhere inside it
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Read the color at a position
+     * @param data the source pixels, row by row
+     * @param width the source width
+     * @param height the source height
+     * @param alphaMask the source's alpha mask (see SimplePicture.getAlphaMask)
+     * @param x the column, can be between pixels
+     * @param y the row, can be between pixels
+     * @param fill the color outside the source
+     * @return the packed (alpha, red, green, blue) value
+     */
+    abstract int sample(int[] data, int width, int height, int alphaMask, double x, double y, int fill);
+
+    // true if the closest pixel to (x, y) is in the source
+    static boolean covers(int width, int height, double x, double y) {
+        return x >= -0.5 && x < width - 0.5 && y >= -0.5 && y < height - 0.5;
+    }
+
+    private static int pixelAt(int[] data, int width, int height, int alphaMask, int x, int y, int fill) {
+        if (x < 0 || x >= width || y < 0 || y >= height) return fill;
+        return data[y * width + x] | alphaMask;
+    }
+}
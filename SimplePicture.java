@@ -1,6 +1,10 @@
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.awt.*;
+import java.util.Arrays;
 import java.io.*;
 import java.awt.geom.*;
 
@@ -33,6 +37,19 @@ public class SimplePicture implements DigitalPicture
    */
   private BufferedImage bufferedImage;
   
+  /**
+   * the packed ARGB pixels backing the buffered image, one int per pixel
+   * in row-major order (index = y * width + x)
+   */
+  private int[] pixelData;
+  
+  /**
+   * bits or'ed into every value read from the pixel data.  Opaque
+   * (TYPE_INT_RGB) pictures don't store alpha so this is 0xff000000,
+   * pictures with alpha (TYPE_INT_ARGB) store it so this is 0
+   */
+  private int alphaMask;
+  
   /**
    * frame used to display the simple picture
    */
@@ -80,7 +97,7 @@ public class SimplePicture implements DigitalPicture
   */
  public  SimplePicture(int width, int height)
  {
-   bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+   setBufferedImage(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
    title = "None";
    fileName = "None";
    extension = "jpg";
@@ -116,19 +133,21 @@ public class SimplePicture implements DigitalPicture
       this.title = new String(copyPicture.title);
    if (copyPicture.bufferedImage != null)
    {
-     this.bufferedImage = new BufferedImage(copyPicture.getWidth(),
-                                            copyPicture.getHeight(), BufferedImage.TYPE_INT_RGB);
+     setBufferedImage(new BufferedImage(copyPicture.getWidth(),
+                                        copyPicture.getHeight(), BufferedImage.TYPE_INT_RGB));
      this.copyPicture(copyPicture);
    }
  }
  
  /**
-  * A constructor that takes a buffered image
+  * A constructor that takes a buffered image.  The image is used
+  * directly if it is already a TYPE_INT_RGB or TYPE_INT_ARGB image,
+  * otherwise it is converted to one.
   * @param image the buffered image
   */
  public SimplePicture(BufferedImage image)
  {
-   this.bufferedImage = image;
+   setBufferedImage(image);
    title = "None";
    fileName = "None";
    extension = "jpg";
@@ -150,27 +169,47 @@ public class SimplePicture implements DigitalPicture
   */
  public void copyPicture(SimplePicture sourcePicture)
  {
-   Pixel sourcePixel = null;
-   Pixel targetPixel = null;
+   int width = Math.min(sourcePicture.getWidth(), this.getWidth());
+   int height = Math.min(sourcePicture.getHeight(), this.getHeight());
+   copyPixels(sourcePicture, 0, 0, 0, 0, width, height);
+ }
+ 
+ /**
+  * Method to copy a rectangle of pixels from the source picture into
+  * this picture one row at a time.  Like Pixel.setColor, only the red, 
+  * green, and blue are copied and each target pixel keeps its alpha.
+  * @param sourcePicture the picture to copy from
+  * @param sourceX the left x of the rectangle in the source picture
+  * @param sourceY the top y of the rectangle in the source picture
+  * @param targetX the left x to copy to in this picture
+  * @param targetY the top y to copy to in this picture
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  */
+ protected void copyPixels(SimplePicture sourcePicture, int sourceX, int sourceY,
+                           int targetX, int targetY, int width, int height)
+ {
+   sourcePicture.checkRegion(sourceX, sourceY, width, height);
+   this.checkRegion(targetX, targetY, width, height);
+   int[] source = sourcePicture.pixelData;
+   int sourceWidth = sourcePicture.getWidth();
+   int targetWidth = this.getWidth();
    
-   // loop through the columns
-   for (int sourceX = 0, targetX = 0; 
-        sourceX < sourcePicture.getWidth() &&
-        targetX < this.getWidth();
-        sourceX++, targetX++)
+   for (int row = 0; row < height; row++)
    {
-     // loop through the rows
-     for (int sourceY = 0, targetY = 0; 
-          sourceY < sourcePicture.getHeight() && 
-          targetY < this.getHeight();
-          sourceY++, targetY++)
+     int from = (sourceY + row) * sourceWidth + sourceX;
+     int to = (targetY + row) * targetWidth + targetX;
+     
+     // opaque pictures ignore the alpha byte so the whole row can be copied
+     if (alphaMask != 0)
+       System.arraycopy(source, from, pixelData, to, width);
+     else
      {
-       sourcePixel = sourcePicture.getPixel(sourceX,sourceY);
-       targetPixel = this.getPixel(targetX,targetY);
-       targetPixel.setColor(sourcePixel.getColor());
+       for (int col = 0; col < width; col++)
+         pixelData[to + col] = (pixelData[to + col] & 0xff000000) | 
+                               (source[from + col] & 0x00ffffff);
      }
    }
-   
  }
  
  /**
@@ -179,14 +218,15 @@ public class SimplePicture implements DigitalPicture
   */
  public void setAllPixelsToAColor(Color color)
  {
-   // loop through all x
-   for (int x = 0; x < this.getWidth(); x++)
+   int rgb = color.getRGB() & 0x00ffffff;
+   
+   // opaque pictures can just be filled, otherwise keep each pixel's alpha
+   if (alphaMask != 0)
+     Arrays.fill(pixelData, alphaMask | rgb);
+   else
    {
-     // loop through all y
-     for (int y = 0; y < this.getHeight(); y++)
-     {
-       getPixel(x,y).setColor(color);
-     }
+     for (int i = 0; i < pixelData.length; i++)
+       pixelData[i] = (pixelData[i] & 0xff000000) | rgb;
    }
  }
  
@@ -296,7 +336,8 @@ public class SimplePicture implements DigitalPicture
   */
  public int getBasicPixel(int x, int y)
  {
-    return bufferedImage.getRGB(x,y);
+   checkLocation(x,y);
+   return pixelData[y * bufferedImage.getWidth() + x] | alphaMask;
  }
     
  /** 
@@ -307,7 +348,211 @@ public class SimplePicture implements DigitalPicture
   */     
  public void setBasicPixel(int x, int y, int rgb)
  {
-   bufferedImage.setRGB(x,y,rgb);
+   checkLocation(x,y);
+   pixelData[y * bufferedImage.getWidth() + x] = rgb | alphaMask;
+ }
+ 
+ /**
+  * Method to get one row of pixel values
+  * @param y the row to get
+  * @param row the array to put the values in (or null to create one)
+  * @return the array holding the width (alpha, red, green, blue) values
+  */
+ public int[] getRow(int y, int[] row)
+ {
+   return getRegion(0, y, getWidth(), 1, row, 0, getWidth());
+ }
+ 
+ /**
+  * Method to set one row of pixel values
+  * @param y the row to set
+  * @param row the width (alpha, red, green, blue) values to use
+  */
+ public void setRow(int y, int[] row)
+ {
+   setRegion(0, y, getWidth(), 1, row, 0, getWidth());
+ }
+ 
+ /**
+  * Method to get the pixel values in a rectangle of this picture.  The
+  * value for (x + col, y + row) is put at pixels[offset + row * stride + col].
+  * @param x the left x of the rectangle
+  * @param y the top y of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  * @param pixels the array to put the values in (or null to create one)
+  * @param offset the index in the array for the top left pixel
+  * @param stride the distance in the array from one row to the next
+  * @return the array holding the (alpha, red, green, blue) values
+  */
+ public int[] getRegion(int x, int y, int width, int height, 
+                        int[] pixels, int offset, int stride)
+ {
+   checkRegion(x, y, width, height);
+   if (pixels == null)
+     pixels = new int[offset + height * stride];
+   int pictureWidth = getWidth();
+   for (int row = 0; row < height; row++)
+   {
+     int to = offset + row * stride;
+     System.arraycopy(pixelData, (y + row) * pictureWidth + x, pixels, to, width);
+     if (alphaMask != 0)
+     {
+       for (int col = 0; col < width; col++)
+         pixels[to + col] |= alphaMask;
+     }
+   }
+   return pixels;
+ }
+ 
+ /**
+  * Method to set the pixel values in a rectangle of this picture.  The
+  * value for (x + col, y + row) is taken from pixels[offset + row * stride + col].
+  * @param x the left x of the rectangle
+  * @param y the top y of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  * @param pixels the (alpha, red, green, blue) values to use
+  * @param offset the index in the array of the top left pixel
+  * @param stride the distance in the array from one row to the next
+  */
+ public void setRegion(int x, int y, int width, int height, 
+                       int[] pixels, int offset, int stride)
+ {
+   checkRegion(x, y, width, height);
+   int pictureWidth = getWidth();
+   for (int row = 0; row < height; row++)
+     System.arraycopy(pixels, offset + row * stride, pixelData, 
+                      (y + row) * pictureWidth + x, width);
+ }
+ 
+ /**
+  * Method to get the packed pixel array that backs this picture.  This
+  * is the live array, not a copy, so changes to it show up in the 
+  * picture.  Pixels are stored in row-major order (index = y * width + x)
+  * as alpha, red, green, blue.  Opaque pictures may have anything in the
+  * alpha byte so or the values with {@link #getAlphaMask()} when reading.
+  * The array is replaced if the picture is loaded from a file again.
+  * @return the packed pixel array
+  */
+ public int[] getPixelData()
+ {
+   return pixelData;
+ }
+ 
+ /**
+  * Method to get the bits that should be or'ed into every value read
+  * from {@link #getPixelData()} to get a full alpha, red, green, blue value
+  * @return 0xff000000 for opaque pictures and 0 for pictures with alpha
+  */
+ public int getAlphaMask()
+ {
+   return alphaMask;
+ }
+ 
+ /**
+  * Method to check if this picture stores an alpha (transparency) value
+  * for each pixel
+  * @return true if the picture has alpha else false
+  */
+ public boolean hasAlpha()
+ {
+   return alphaMask == 0;
+ }
+ 
+ /**
+  * Method to get a copy of all the pixel values in row-major order
+  * @return an array of width * height (alpha, red, green, blue) values
+  */
+ public int[] getBasicPixels()
+ {
+   int[] result = Arrays.copyOf(pixelData, pixelData.length);
+   if (alphaMask != 0)
+   {
+     for (int i = 0; i < result.length; i++)
+       result[i] |= alphaMask;
+   }
+   return result;
+ }
+ 
+ /**
+  * Method to set all the pixel values from an array in row-major order
+  * @param pixels an array of width * height (alpha, red, green, blue) values
+  */
+ public void setBasicPixels(int[] pixels)
+ {
+   if (pixels.length != pixelData.length)
+     throw new IllegalArgumentException("expected " + pixelData.length +
+                                        " pixels but got " + pixels.length);
+   System.arraycopy(pixels, 0, pixelData, 0, pixels.length);
+ }
+ 
+ /**
+  * Method to check that an x and y location is in the picture
+  * @param x the x coordinate of the pixel
+  * @param y the y coordinate of the pixel
+  */
+ private void checkLocation(int x, int y)
+ {
+   if (x < 0 || y < 0 || x >= bufferedImage.getWidth() || y >= bufferedImage.getHeight())
+     throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+ }
+ 
+ /**
+  * Method to check that a rectangle is inside the picture
+  * @param x the left x of the rectangle
+  * @param y the top y of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  */
+ private void checkRegion(int x, int y, int width, int height)
+ {
+   if (width < 0 || height < 0 || x < 0 || y < 0 || 
+       x + width > getWidth() || y + height > getHeight())
+     throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+ }
+ 
+ /**
+  * Method to use the passed buffered image for this picture.  Images that
+  * are not already stored as one packed int per pixel are converted so that
+  * the pixels can be read and written directly from an int array.
+  * @param image the buffered image to use
+  */
+ private void setBufferedImage(BufferedImage image)
+ {
+   if (!isPacked(image))
+   {
+     int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB 
+                                                  : BufferedImage.TYPE_INT_RGB;
+     BufferedImage packed = new BufferedImage(image.getWidth(), image.getHeight(), type);
+     int[] data = ((DataBufferInt) packed.getRaster().getDataBuffer()).getData();
+     image.getRGB(0, 0, image.getWidth(), image.getHeight(), data, 0, image.getWidth());
+     image = packed;
+   }
+   bufferedImage = image;
+   pixelData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+   alphaMask = (image.getType() == BufferedImage.TYPE_INT_RGB) ? 0xff000000 : 0;
+ }
+ 
+ /**
+  * Method to check if a buffered image stores one int per pixel with 
+  * no padding so that its data buffer can be used as the pixel array
+  * @param image the buffered image to check
+  * @return true if the data buffer can be used directly else false
+  */
+ private static boolean isPacked(BufferedImage image)
+ {
+   if (image.getType() != BufferedImage.TYPE_INT_RGB && 
+       image.getType() != BufferedImage.TYPE_INT_ARGB)
+     return false;
+   WritableRaster raster = image.getRaster();
+   if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel) ||
+       raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0)
+     return false;
+   SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+   return model.getScanlineStride() == image.getWidth() &&
+     raster.getDataBuffer().getOffset() == 0 &&
+     raster.getDataBuffer().getNumBanks() == 1;
  }
   
  /**
@@ -360,6 +605,33 @@ public class SimplePicture implements DigitalPicture
    return pixelArray;
  }
  
+ /**
+  * Method to get a cursor that can be moved over the pixels in this
+  * picture without creating a Pixel object for each one
+  * @return a cursor positioned just before the first pixel
+  */
+ public PixelCursor getPixelCursor()
+ {
+   return new PixelCursor(this);
+ }
+ 
+ /**
+  * Method to visit every pixel in row-major order and set each one to
+  * the value the visitor returns.  No objects are created per pixel.
+  * @param visitor the code to call for each pixel
+  */
+ public void forEachPixel(PixelVisitor visitor)
+ {
+   int width = getWidth();
+   int height = getHeight();
+   int index = 0;
+   for (int y = 0; y < height; y++)
+   {
+     for (int x = 0; x < width; x++, index++)
+       pixelData[index] = visitor.visit(x, y, pixelData[index] | alphaMask) | alphaMask;
+   }
+ }
+ 
  /**
   * Method to load the buffered image with the passed image
   * @param image  the image to use
@@ -469,7 +741,12 @@ public class SimplePicture implements DigitalPicture
      }
    }
    
-   bufferedImage = ImageIO.read(file);
+   BufferedImage image = ImageIO.read(file);
+   if (image == null)
+   {
+     throw new IOException(this.fileName + " is not in a supported image format");
+   }
+   setBufferedImage(image);
  }
 
 
@@ -487,8 +764,8 @@ public class SimplePicture implements DigitalPicture
 
      } catch (Exception ex) {
          System.out.println("There was an error trying to open " + fileName);
-         bufferedImage = new BufferedImage(600,200,
-                                           BufferedImage.TYPE_INT_RGB);
+         setBufferedImage(new BufferedImage(600,200,
+                                            BufferedImage.TYPE_INT_RGB));
          addMessage("Couldn't load " + fileName,5,100);
          return false;
      }
@@ -14,6 +14,54 @@ public class TestRunner {
         // Run Matrix2by2 unit tests
         Matrix2by2.runUnitTests();
         
+        // Run PixelCursor unit tests
+        PixelCursor.runUnitTests();
+        
+        // Run ChannelLut unit tests
+        ChannelLut.runUnitTests();
+        
+        // Run PixelPipeline unit tests
+        PixelPipeline.runUnitTests();
+        
+        // Run RowBandExecutor unit tests
+        RowBandExecutor.runUnitTests();
+
+        // Run RightAngleRotation unit tests
+        RightAngleRotation.runUnitTests();
+
+        // Run AngleRotation unit tests
+        AngleRotation.runUnitTests();
+
+        // Run Matrix3by3 unit tests
+        Matrix3by3.runUnitTests();
+
+        // Run Warp unit tests
+        Warp.runUnitTests();
+
+        // Run TransformChain unit tests
+        TransformChain.runUnitTests();
+
+        // Run LazyPicture unit tests
+        LazyPicture.runUnitTests();
+
+        // Run PictureCache unit tests
+        PictureCache.runUnitTests();
+
+        // Run ResultCache unit tests
+        ResultCache.runUnitTests();
+
+        // Run ImagePyramid unit tests
+        ImagePyramid.runUnitTests();
+
+        // Run OverlayMask unit tests
+        OverlayMask.runUnitTests();
+
+        // Run LayerStack unit tests
+        LayerStack.runUnitTests();
+
+        // Run PixelKernels unit tests
+        PixelKernels.runUnitTests();
+        
         System.out.println("====================================");
         System.out.println("  Additional Integration Tests      ");
         System.out.println("====================================\n");
@@ -0,0 +1,171 @@
+/**
+ * TransformChain records geometric steps (rotate, scale, mirror, shear) as
+ * matrices and multiplies them together as they are added, so a chain of
+ * any length is still one Matrix2by2. Applying it resamples the picture
+ * once, instead of making a new picture and interpolating again per step.
+ *
+ * Steps are about the picture's center and the result is sized to fit, the
+ * same as ImageApp.rotate. Chains of right angles and mirrors move whole
+ * pixels to whole pixels, so they are copied exactly without blending.
+ */
+public class TransformChain {
+    // takes a source position (relative to the center) to where it ends up
+    private Matrix2by2 matrix = Matrix2by2.identity();
+    private int steps;
+
+    /**
+     * Rotate, in the same direction as ImageApp.rotate
+     * @param degrees the angle counter-clockwise
+     * @return this chain
+     */
+    public TransformChain rotate(double degrees) {
+        if (degrees == Math.rint(degrees) && RightAngleRotation.isRightAngle((int) degrees)) {
+            // exact zeros and ones so the chain stays exact
+            return then(RightAngleRotation.of((int) degrees).getMatrix().inverse());
+        }
+        return then(Matrix2by2.rotation(Math.toRadians(degrees)).inverse());
+    }
+
+    /**
+     * @param sx how much to stretch horizontally
+     * @param sy how much to stretch vertically
+     * @return this chain
+     */
+    public TransformChain scale(double sx, double sy) {
+        return then(new Matrix2by2(sx, 0, 0, sy));
+    }
+
+    /**
+     * Flip left to right
+     * @return this chain
+     */
+    public TransformChain mirrorHorizontal() {
+        return scale(-1, 1);
+    }
+
+    /**
+     * Flip top to bottom
+     * @return this chain
+     */
+    public TransformChain mirrorVertical() {
+        return scale(1, -1);
+    }
+
+    /**
+     * @param shx how much x moves for each step in y
+     * @param shy how much y moves for each step in x
+     * @return this chain
+     */
+    public TransformChain shear(double shx, double shy) {
+        return then(new Matrix2by2(1, shy, shx, 1));
+    }
+
+    /**
+     * Add any step
+     * @param step takes a position to where it ends up
+     * @return this chain
+     */
+    public TransformChain then(Matrix2by2 step) {
+        matrix = Matrix2by2.multiply(matrix, step);
+        steps++;
+        return this;
+    }
+
+    /**
+     * @return all the steps multiplied into one matrix
+     */
+    public Matrix2by2 getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * @return how many steps were added
+     */
+    public int getStepCount() {
+        return steps;
+    }
+
+    /**
+     * @return true if there are no steps, or they undo each other
+     */
+    public boolean isIdentity() {
+        return matrix.getA() == 1 && matrix.getB() == 0 && matrix.getC() == 0 && matrix.getD() == 1;
+    }
+
+    /**
+     * @return true if whole pixels land on whole pixels (right angles and mirrors)
+     */
+    public boolean isExact() {
+        double a = Math.abs(matrix.getA()), b = Math.abs(matrix.getB());
+        double c = Math.abs(matrix.getC()), d = Math.abs(matrix.getD());
+        return (a == 1 && d == 1 && b == 0 && c == 0) || (a == 0 && d == 0 && b == 1 && c == 1);
+    }
+
+    /**
+     * @return the chain as a right angle rotation, or null if it is anything else
+     */
+    public RightAngleRotation getRightAngle() {
+        for (int degrees = 0; degrees < 360; degrees += 90) {
+            Matrix2by2 m = RightAngleRotation.of(degrees).getMatrix().inverse();
+            if (m.getA() == matrix.getA() && m.getB() == matrix.getB()
+                    && m.getC() == matrix.getC() && m.getD() == matrix.getD()) {
+                return RightAngleRotation.of(degrees);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Apply every step in one pass
+     * @param source the picture
+     * @param sampling how to read between pixels, not used for exact chains
+     * @return a new picture, sized to fit
+     */
+    public Picture apply(Picture source, Sampling sampling) {
+        RightAngleRotation rightAngle = getRightAngle();
+        if (rightAngle != null) {
+            return rightAngle.rotate(source);
+        }
+        return Warp.warp(source, new Matrix3by3(matrix), isExact() ? Sampling.NEAREST : sampling);
+    }
+
+    /**
+     * Unit tests for TransformChain
+     */
+    public static void runUnitTests() {
+        System.out.println("=== TransformChain Unit Tests ===");
+
+        Picture source = new Picture(5, 8);
+        source.forEachPixel((x, y, p) -> 0xff000000 | (x * 30 << 16) | (y * 50 << 8) | 200);
+
+        // Test 1: right angles and mirrors stay exact and match doing each step
+        TransformChain chain = new TransformChain().rotate(90).mirrorHorizontal().rotate(180);
+        assert chain.getStepCount() == 3 && chain.isExact() : "Chain should be exact";
+        Picture stepByStep = ImageApp.rotate(Warp.warp(ImageApp.rotate(source, 90),
+                                                       Matrix3by3.scale(-1, 1), Sampling.NEAREST), 180);
+        System.out.println("Test 1 - rotate 90, mirror, rotate 180 as one matrix: " + chain.getMatrix());
+        assert Picture.isSame(chain.apply(source, Sampling.BICUBIC), stepByStep) : "Chain should match each step";
+        System.out.println("✓ Exact chains work correctly");
+
+        // Test 2: right angles that add up to one rotation use the exact rotation
+        TransformChain turns = new TransformChain().rotate(90).rotate(90).rotate(-90).rotate(180);
+        assert turns.getRightAngle() != null && turns.getRightAngle().getDegrees() == 270 : "Should be 270";
+        assert Picture.isSame(turns.apply(source, Sampling.BILINEAR), ImageApp.rotate(source, 270))
+            : "Turns should match rotate 270";
+        assert new TransformChain().mirrorVertical().mirrorVertical().isIdentity() : "Two mirrors cancel";
+        System.out.println("Test 2 - 90 + 90 - 90 + 180 is one 270 degree rotation");
+        System.out.println("✓ Right angle chains work correctly");
+
+        // Test 3: rotate + scale is one resample, the same as warping by the product
+        TransformChain tilt = new TransformChain().rotate(30).scale(2, 2).rotate(-30);
+        Matrix2by2 m = tilt.getMatrix();
+        System.out.println("Test 3 - rotate 30, scale 2, rotate -30: " + m);
+        assert Math.abs(m.getA() - 2) < 1e-12 && Math.abs(m.getB()) < 1e-12
+            && Math.abs(m.getC()) < 1e-12 && Math.abs(m.getD() - 2) < 1e-12 : "Should be scale 2";
+        Picture once = tilt.apply(source, Sampling.BILINEAR);
+        assert once.getWidth() == 15 && once.getHeight() == 9 : "Output should fit the scaled picture";
+        System.out.println("✓ Chains resample once");
+
+        System.out.println("=== All TransformChain tests passed! ===\n");
+    }
+}
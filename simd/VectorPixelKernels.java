@@ -0,0 +1,89 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorPixelKernels runs the PixelKernels with the Java Vector API so each
+ * instruction works on a whole SIMD register of pixels (8 with AVX2, 16 with
+ * AVX-512). Pixels left over at the end of a range use the scalar kernels.
+ *
+ * This file needs the incubator module, so it is kept out of the main folder
+ * and compiled on its own:
+ *
+ *   javac --add-modules jdk.incubator.vector -d . simd/VectorPixelKernels.java
+ *   java --add-modules jdk.incubator.vector ImageAppGUI
+ *
+ * PixelKernels.get() loads it when it is there and falls back to scalar when
+ * it is not.
+ */
+public class VectorPixelKernels extends PixelKernels {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private final PixelKernels tail = PixelKernels.scalar();
+
+    public String getName() {
+        return "vector (" + SPECIES.length() + " pixels per operation)";
+    }
+
+    public void negative(int[] pixels, int from, int to) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector v = IntVector.fromArray(SPECIES, pixels, i);
+            v.lanewise(VectorOperators.XOR, 0x00ffffff).intoArray(pixels, i);
+        }
+        tail.negative(pixels, i, to);
+    }
+
+    public void recolorBRG(int[] pixels, int from, int to) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector v = IntVector.fromArray(SPECIES, pixels, i);
+            IntVector red = v.and(0xff).lanewise(VectorOperators.LSHL, 16);
+            IntVector greenBlue = v.lanewise(VectorOperators.LSHR, 8).and(0xffff);
+            v.and(0xff000000).or(red).or(greenBlue).intoArray(pixels, i);
+        }
+        tail.recolorBRG(pixels, i, to);
+    }
+
+    public void grayscale(int[] pixels, int from, int to) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector v = IntVector.fromArray(SPECIES, pixels, i);
+            IntVector sum = v.lanewise(VectorOperators.LSHR, 16).and(0xff)
+                .add(v.lanewise(VectorOperators.LSHR, 8).and(0xff))
+                .add(v.and(0xff));
+            // same multiply and shift as PixelKernels.divideBy3
+            IntVector avg = sum.mul(0xaaab).lanewise(VectorOperators.LSHR, 17);
+            v.and(0xff000000)
+                .or(avg.lanewise(VectorOperators.LSHL, 16))
+                .or(avg.lanewise(VectorOperators.LSHL, 8))
+                .or(avg)
+                .intoArray(pixels, i);
+        }
+        tail.grayscale(pixels, i, to);
+    }
+
+    public void and(int[] pixels, int from, int to, int mask) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, pixels, i).and(mask).intoArray(pixels, i);
+        }
+        tail.and(pixels, i, to, mask);
+    }
+
+    public void hide(int[] cover, int coverFrom, int[] secret, int secretFrom, int count) {
+        int i = 0;
+        int upper = SPECIES.loopBound(count);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector c = IntVector.fromArray(SPECIES, cover, coverFrom + i);
+            IntVector s = IntVector.fromArray(SPECIES, secret, secretFrom + i);
+            c.and(CLEAR_LOW_MASK)
+                .or(s.lanewise(VectorOperators.LSHR, 6).and(HIGH_BITS_MASK))
+                .intoArray(cover, coverFrom + i);
+        }
+        tail.hide(cover, coverFrom + i, secret, secretFrom + i, count - i);
+    }
+}